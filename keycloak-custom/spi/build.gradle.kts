@@ -25,6 +25,13 @@ val jbossVersion = "3.5.1.Final";
 
 val junitVersion = "5.10.3"
 val mockitoVersion = "5.5.0"
+val jmhVersion = "1.37"
+
+// JMH micro-benchmarks live in src/jmh/java and see the main classes plus their compileOnly deps
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += output + compileClasspath
+}
 
 dependencies {
     compileOnly("org.keycloak:keycloak-core:$kcVersion")
@@ -45,6 +52,9 @@ dependencies {
     implementation("org.jboss.logging:jboss-logging:$jbossVersion")
 
     testImplementation("org.keycloak:keycloak-core:${kcVersion}")
+    testImplementation("org.keycloak:keycloak-saml-core:$kcVersion")
+    testImplementation("org.keycloak:keycloak-server-spi:$kcVersion")
+    testImplementation("org.keycloak:keycloak-services:$kcVersion")
     testImplementation("com.fasterxml.jackson.core:jackson-core:$jacksonVersion")
     testImplementation("com.fasterxml.jackson.core:jackson-databind:$jacksonVersion")
     testImplementation("com.nimbusds:oauth2-oidc-sdk:${nimbusOidcVersion}")
@@ -55,12 +65,24 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter:$junitVersion")
     testImplementation("org.junit.jupiter:junit-jupiter-api:$junitVersion")
     testImplementation("org.junit.jupiter:junit-jupiter-engine:${junitVersion}")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
 }
 
 tasks.test {
     useJUnitPlatform()
 }
 
+// usage: gradle jmh -Pjmh.args="JwsVerifierBenchmark -prof gc"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks in src/jmh"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args((findProperty("jmh.args") as String? ?: "").split(" ").filter { it.isNotBlank() })
+}
+
 tasks.jar {
     // ensures META-INF/services is included
     duplicatesStrategy = DuplicatesStrategy.INCLUDE
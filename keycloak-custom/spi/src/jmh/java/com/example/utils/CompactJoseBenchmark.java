@@ -0,0 +1,67 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading the payload of a bearer token with {@code String.split} and
+ * {@link Base64} versus {@link CompactJose}, for a valid token, a malformed header and an
+ * oversized one.
+ * <p>
+ * Run with {@code gradle jmh -Pjmh.args="CompactJoseBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompactJoseBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Param({"valid", "malformed", "oversized"})
+    public String shape;
+
+    private String header;
+
+    @Setup
+    public void setup() {
+        var encoder = Base64.getUrlEncoder().withoutPadding();
+        var jwsHeader = encoder.encodeToString("{\"alg\":\"ES256\",\"kid\":\"sig-2024\"}".getBytes(StandardCharsets.UTF_8));
+        var payload = encoder.encodeToString(("{\"sub\":\"3c0b2c9e-8d8d-4f6e-9f2e-0c6f3f1b2a11\",\"exp\":1700000000,"
+                + "\"preferred_username\":\"corppass-user\",\"iss\":\"https://idp.example.com/realms/agency\"}")
+                .getBytes(StandardCharsets.UTF_8));
+        var signature = encoder.encodeToString(new byte[64]);
+        header = switch (shape) {
+            case "valid" -> "Bearer " + jwsHeader + "." + payload + "." + signature;
+            case "malformed" -> "Bearer " + jwsHeader + "." + "{not-base64}" + "." + signature;
+            default -> "Bearer " + jwsHeader + "." + "A".repeat(CompactJose.MAX_LENGTH) + "." + signature;
+        };
+    }
+
+    @Benchmark
+    public Object splitAndDecode() {
+        try {
+            var accessToken = header.replace("Bearer", "").trim();
+            var encodedPayload = accessToken.split("\\.")[1];
+            var payload = new String(Base64.getUrlDecoder().decode(encodedPayload));
+            return objectMapper.readValue(payload, Map.class);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object compactJose() {
+        try {
+            return CompactJose.parseBearer(header).readPayload(objectMapper, Map.class);
+        } catch (Exception e) {
+            return e;
+        }
+    }
+}
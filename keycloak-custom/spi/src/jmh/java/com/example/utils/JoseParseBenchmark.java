@@ -0,0 +1,115 @@
+package com.example.utils;
+
+import com.nimbusds.jose.EncryptionMethod;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.JWEHeader;
+import com.nimbusds.jose.JWEObject;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDHDecrypter;
+import com.nimbusds.jose.crypto.ECDHEncrypter;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.keycloak.jose.JOSEParser;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.util.JsonSerialization;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypt, verify and claim-decode a nested JWE(JWS) ID token shaped like Singpass's
+ * (ECDH-ES+A256KW / A256CBC-HS512 around an ES256 JWT), comparing the previous multi-parse
+ * pipeline of {@code JweUtil.parse} and {@code JwtUtil.validateToken} with {@link ParsedToken}.
+ * <p>
+ * The decrypter and verifier are built once so both variants pay the same crypto cost; the
+ * {@code decode*} pair drops the crypto to isolate the parsing work on the inner JWS.
+ * Run with {@code gradle jmh -Pjmh.args="JoseParseBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoseParseBenchmark {
+    private String nestedToken;
+    private String signedToken;
+    private ECDHDecrypter decrypter;
+    private JWSVerifier verifier;
+
+    @Setup
+    public void setup() throws Exception {
+        var sigKey = new ECKeyGenerator(Curve.P_256).keyID("sig-2024").generate();
+        var encKey = new ECKeyGenerator(Curve.P_256).keyID("enc-2024").generate();
+
+        var now = new Date();
+        var claims = new JWTClaimsSet.Builder()
+                .issuer("https://stg-id.singpass.gov.sg")
+                .subject("s=S8979373D,u=a9865837-7bd7-46ac-bef4-42a76a946424")
+                .audience("client-id")
+                .issueTime(now)
+                .expirationTime(new Date(now.getTime() + 600_000))
+                .claim("nonce", "c3f1d8e0-61a4-4a24-9d6a-5d8c2c3b1f7e")
+                .claim("amr", new String[]{"pwd", "swk"})
+                .build();
+        var jws = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(sigKey.getKeyID()).build(), claims);
+        jws.sign(new ECDSASigner(sigKey));
+        signedToken = jws.serialize();
+
+        var jwe = new JWEObject(new JWEHeader.Builder(JWEAlgorithm.ECDH_ES_A256KW, EncryptionMethod.A256CBC_HS512)
+                .keyID(encKey.getKeyID())
+                .contentType("JWT")
+                .build(), new Payload(signedToken));
+        jwe.encrypt(new ECDHEncrypter(encKey.toPublicJWK()));
+        nestedToken = jwe.serialize();
+
+        decrypter = new ECDHDecrypter(encKey);
+        verifier = new ECDSAVerifier(sigKey.toPublicJWK());
+    }
+
+    @Benchmark
+    public JsonWebToken multiPass() throws Exception {
+        JOSEParser.parse(nestedToken);
+        var jwe = JWEObject.parse(nestedToken);
+        jwe.decrypt(decrypter);
+        var jwsInput = (JWSInput) JOSEParser.parse(jwe.getPayload().toString());
+        var sjwt = SignedJWT.parse(jwsInput.getWireString());
+        if (!sjwt.verify(verifier)) {
+            throw new IllegalStateException("signature");
+        }
+        return JsonSerialization.readValue(new String(jwsInput.getContent(), StandardCharsets.UTF_8), JsonWebToken.class);
+    }
+
+    @Benchmark
+    public JsonWebToken singlePass() throws Exception {
+        var jwe = JWEObject.parse(nestedToken);
+        jwe.decrypt(decrypter);
+        var token = ParsedToken.parse(jwe.getPayload().toString());
+        if (!token.getJwsObject().verify(verifier)) {
+            throw new IllegalStateException("signature");
+        }
+        return token.getClaims();
+    }
+
+    @Benchmark
+    public JsonWebToken decodeMultiPass() throws Exception {
+        var jwsInput = (JWSInput) JOSEParser.parse(signedToken);
+        SignedJWT.parse(jwsInput.getWireString());
+        return JsonSerialization.readValue(new String(jwsInput.getContent(), StandardCharsets.UTF_8), JsonWebToken.class);
+    }
+
+    @Benchmark
+    public JsonWebToken decodeSinglePass() throws Exception {
+        return ParsedToken.parse(signedToken).getClaims();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-verify cost of an ES256 ID token signature check, building a fresh
+ * {@link ECDSAVerifier} each time versus reusing one from {@link JwsVerifierCache}, with the
+ * key thumbprint computed per lookup or known up front.
+ * <p>
+ * Run with {@code gradle jmh -Pjmh.args="JwsVerifierBenchmark -prof gc"} to include
+ * allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwsVerifierBenchmark {
+    private ECKey publicJwk;
+    private SignedJWT token;
+    private JwsVerifierCache cache;
+    private String thumbprint;
+
+    @Setup
+    public void setup() throws Exception {
+        var jwk = new ECKeyGenerator(Curve.P_256).keyID("sig-2024").generate();
+        publicJwk = jwk.toPublicJWK();
+        token = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(jwk.getKeyID()).build(),
+                new JWTClaimsSet.Builder().subject("s=S8979373D,u=123456789AS8979373D").issuer("https://singpass").build());
+        token.sign(new ECDSASigner(jwk));
+        cache = new JwsVerifierCache(JwsVerifierCache.MAX_ENTRIES);
+        thumbprint = JwsVerifierCache.thumbprint(publicJwk);
+    }
+
+    @Benchmark
+    public boolean newVerifierPerToken() throws Exception {
+        return token.verify(new ECDSAVerifier(publicJwk));
+    }
+
+    @Benchmark
+    public boolean cachedVerifier() throws Exception {
+        return token.verify(cache.get(publicJwk, JwsVerifierCache.thumbprint(publicJwk), JWSAlgorithm.ES256));
+    }
+
+    /**
+     * The request path: the thumbprint comes from {@link JwksCache}, computed at fetch time.
+     */
+    @Benchmark
+    public boolean cachedVerifierKnownThumbprint() throws Exception {
+        return token.verify(cache.get(publicJwk, thumbprint, JWSAlgorithm.ES256));
+    }
+}
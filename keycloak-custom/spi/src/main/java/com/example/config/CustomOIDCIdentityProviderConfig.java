@@ -1,7 +1,11 @@
 package com.example.config;
 
+import com.example.utils.AttributeProjection;
+import com.example.utils.ClaimTemplate;
+import com.example.utils.JwksCache;
 import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
 import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.RealmModel;
 
 public class CustomOIDCIdentityProviderConfig extends OIDCIdentityProviderConfig {
 
@@ -132,4 +136,73 @@ public class CustomOIDCIdentityProviderConfig extends OIDCIdentityProviderConfig
     public void setClaimExtractionToAttributeTemplate(String claimExtractionToAttributeTemplate) {
         getConfig().put("claimExtractionToAttributeTemplate", claimExtractionToAttributeTemplate);
     }
-}
\ No newline at end of file
+
+    /**
+     * Globs of the claims copied to user attributes, see {@link AttributeProjection}.
+     */
+    public String getAttributeIncludePatterns() {
+        return getConfig().get("attributeIncludePatterns");
+    }
+
+    public void setAttributeIncludePatterns(String attributeIncludePatterns) {
+        getConfig().put("attributeIncludePatterns", attributeIncludePatterns);
+    }
+
+    /**
+     * Globs of the claims never copied to user attributes, on top of the raw tokens.
+     */
+    public String getAttributeExcludePatterns() {
+        return getConfig().get("attributeExcludePatterns");
+    }
+
+    public void setAttributeExcludePatterns(String attributeExcludePatterns) {
+        getConfig().put("attributeExcludePatterns", attributeExcludePatterns);
+    }
+
+    /**
+     * Whether the raw access, ID and refresh tokens may be copied to user attributes.
+     */
+    public boolean isKeepRawTokenAttributesFlag() {
+        return Boolean.parseBoolean(getConfig().get("keepRawTokenAttributesFlag"));
+    }
+
+    public void setKeepRawTokenAttributesFlag(boolean keepRawTokenAttributesFlag) {
+        getConfig().put("keepRawTokenAttributesFlag", String.valueOf(keepRawTokenAttributesFlag));
+    }
+
+    /**
+     * Rejects claim templates that do not compile, see {@link ClaimTemplate}.
+     */
+    @Override
+    public void validate(RealmModel realm) {
+        super.validate(realm);
+        ClaimTemplate.compile(getClaimExtractionTemplate(), getClaimExtractionToAttributeTemplate());
+    }
+
+    public long getJwksCacheMinTtl() {
+        return parseLong(getConfig().get("jwksCacheMinTtl"), JwksCache.DEFAULT_MIN_TTL_SECONDS);
+    }
+
+    public void setJwksCacheMinTtl(long jwksCacheMinTtl) {
+        getConfig().put("jwksCacheMinTtl", String.valueOf(jwksCacheMinTtl));
+    }
+
+    public long getJwksCacheMaxTtl() {
+        return parseLong(getConfig().get("jwksCacheMaxTtl"), JwksCache.DEFAULT_MAX_TTL_SECONDS);
+    }
+
+    public void setJwksCacheMaxTtl(long jwksCacheMaxTtl) {
+        getConfig().put("jwksCacheMaxTtl", String.valueOf(jwksCacheMaxTtl));
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -8,6 +8,8 @@ public class CustomSAMLConfigurationRepresentation {
     private boolean audiencesValidationFlag;
     private String validAudiences;
     private String suffixIdpName;
+    private String attributeMapping;
+    private String metadataRefreshMaxSeconds;
 
     public boolean isHashPrincipalFlag() {
         return hashPrincipalFlag;
@@ -56,4 +58,20 @@ public class CustomSAMLConfigurationRepresentation {
     public void setSuffixIdpName(String suffixIdpName) {
         this.suffixIdpName = suffixIdpName;
     }
+
+    public String getAttributeMapping() {
+        return attributeMapping;
+    }
+
+    public void setAttributeMapping(String attributeMapping) {
+        this.attributeMapping = attributeMapping;
+    }
+
+    public String getMetadataRefreshMaxSeconds() {
+        return metadataRefreshMaxSeconds;
+    }
+
+    public void setMetadataRefreshMaxSeconds(String metadataRefreshMaxSeconds) {
+        this.metadataRefreshMaxSeconds = metadataRefreshMaxSeconds;
+    }
 }
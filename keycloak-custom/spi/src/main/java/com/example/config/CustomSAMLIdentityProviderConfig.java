@@ -1,7 +1,10 @@
 package com.example.config;
 
+import com.example.utils.SamlAttributeExtractor;
+import com.example.utils.SamlMetadataRefresher;
 import org.keycloak.broker.saml.SAMLIdentityProviderConfig;
 import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.RealmModel;
 
 import java.util.Arrays;
 import java.util.List;
@@ -17,6 +20,8 @@ public class CustomSAMLIdentityProviderConfig extends SAMLIdentityProviderConfig
     public static final String AUDIENCES_VALIDATION_FLAG = "audiencesValidationFlag";
     public static final String VALID_AUDIENCES = "validAudiences";
     public static final String SUFFIX_IDP_NAME = "suffixIdpName";
+    public static final String ATTRIBUTE_MAPPING = "attributeMapping";
+    public static final String METADATA_REFRESH_MAX_SECONDS = "metadataRefreshMaxSeconds";
 
     public CustomSAMLIdentityProviderConfig() {
         super();
@@ -79,4 +84,45 @@ public class CustomSAMLIdentityProviderConfig extends SAMLIdentityProviderConfig
     public void setSuffixIdpName(String suffixIdpName) {
         getConfig().put(SUFFIX_IDP_NAME, suffixIdpName);
     }
+
+    /**
+     * Rejects an attribute mapping that does not parse.
+     */
+    @Override
+    public void validate(RealmModel realm) {
+        super.validate(realm);
+        SamlAttributeExtractor.mapping(getAttributeMapping());
+    }
+
+    /**
+     * {@code SamlName=userAttribute} pairs separated by {@code ;}, see
+     * {@link SamlAttributeExtractor}.
+     */
+    public String getAttributeMapping() {
+        return getConfig().get(ATTRIBUTE_MAPPING);
+    }
+
+    public void setAttributeMapping(String attributeMapping) {
+        getConfig().put(ATTRIBUTE_MAPPING, attributeMapping);
+    }
+
+    /**
+     * Longest interval between two refreshes of the metadata descriptor, see
+     * {@link SamlMetadataRefresher}.
+     */
+    public long getMetadataRefreshMaxSeconds() {
+        var value = getConfig().get(METADATA_REFRESH_MAX_SECONDS);
+        if (value == null || value.isBlank()) {
+            return SamlMetadataRefresher.DEFAULT_REFRESH_SECONDS;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return SamlMetadataRefresher.DEFAULT_REFRESH_SECONDS;
+        }
+    }
+
+    public void setMetadataRefreshMaxSeconds(long metadataRefreshMaxSeconds) {
+        getConfig().put(METADATA_REFRESH_MAX_SECONDS, String.valueOf(metadataRefreshMaxSeconds));
+    }
 }
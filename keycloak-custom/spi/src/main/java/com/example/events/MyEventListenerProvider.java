@@ -1,13 +1,30 @@
 package com.example.events;
 
+import com.example.key.RealmKeyCaches;
+import com.example.utils.AuthorizationDecisionCache;
 import org.jboss.logging.Logger;
 import org.keycloak.events.Event;
 import org.keycloak.events.EventListenerProvider;
 import org.keycloak.events.admin.AdminEvent;
+import org.keycloak.events.admin.ResourceType;
+
+import java.util.EnumSet;
+import java.util.Set;
 
 public class MyEventListenerProvider implements EventListenerProvider {
   private static final Logger logger = Logger.getLogger(MyEventListenerProvider.class);
 
+  /**
+   * Admin changes that can revoke the admin role checked by the custom REST resources.
+   */
+  private static final Set<ResourceType> ROLE_RESOURCE_TYPES = EnumSet.of(
+      ResourceType.USER,
+      ResourceType.REALM_ROLE,
+      ResourceType.REALM_ROLE_MAPPING,
+      ResourceType.CLIENT_ROLE_MAPPING,
+      ResourceType.GROUP,
+      ResourceType.GROUP_MEMBERSHIP);
+
   @Override
   public void onEvent(Event event) {
     if (event.getError() != null) {
@@ -30,6 +47,12 @@ public class MyEventListenerProvider implements EventListenerProvider {
 
   @Override
   public void onEvent(AdminEvent event, boolean includeRepresentation) {
+    if (event.getError() == null && event.getResourceType() == ResourceType.COMPONENT) {
+      RealmKeyCaches.invalidate(event.getRealmId());
+    }
+    if (event.getError() == null && ROLE_RESOURCE_TYPES.contains(event.getResourceType())) {
+      AuthorizationDecisionCache.getInstance().invalidateAll();
+    }
     if (event.getError() != null) {
       logger.errorf("admin-error op=%s resType=%s realm=%s resPath=%s",
           event.getOperationType(), event.getResourceType(), event.getRealmId(), event.getResourcePath(),
@@ -1,7 +1,7 @@
 package com.example.identity;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Set;
 
 import com.example.utils.*;
 import com.fasterxml.jackson.databind.JsonNode;
@@ -23,8 +23,9 @@ import org.keycloak.representations.IDToken;
 import org.keycloak.representations.JsonWebToken;
 import org.keycloak.sessions.AuthenticationSessionModel;
 
+import com.example.authenticator.StoreInitiatingClientToUserAttr;
 import com.example.config.CustomOIDCIdentityProviderConfig;
-import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JOSEException;
 
 import org.keycloak.util.JsonSerialization;
 
@@ -63,11 +64,25 @@ import static org.keycloak.utils.MediaType.APPLICATION_JSON_TYPE;
 public class CustomOIDCProvider extends CustomDuplicator {
     private static final Logger logger = Logger.getLogger(CustomOIDCProvider.class);
 
+    /**
+     * Sizing hint for flattened MyInfo person responses, which carry a few hundred leaves.
+     */
+    private static final int USER_INFO_EXPECTED_CLAIMS = 256;
+
+    /**
+     * Stored attributes never pruned by the attribute projection: Keycloak's own user fields
+     * and the ones written by this SPI's login-initiation authenticator and listener.
+     */
+    private static final Set<String> RETAINED_ATTRIBUTES = Set.of(
+            UserModel.USERNAME, UserModel.EMAIL, UserModel.EMAIL_VERIFIED, UserModel.FIRST_NAME, UserModel.LAST_NAME,
+            StoreInitiatingClientToUserAttr.ATTR_KEY, StoreInitiatingClientToUserAttr.ATTR_TIME);
+
     public final CustomOIDCIdentityProviderConfig configuration;
 
     public CustomOIDCProvider(KeycloakSession session, CustomOIDCIdentityProviderConfig config) {
         super(session, config);
         this.configuration = config;
+        MetadataRefresher.getInstance().register(session, config);
     }
 
     /**
@@ -158,14 +173,14 @@ public class CustomOIDCProvider extends CustomDuplicator {
             if (configuration.getSigningKeyId() == null || configuration.getSigningKeyId().isEmpty()) {
                 jws = new JWSBuilder().type(OAuth2Constants.JWT).jsonContent(generateToken()).sign(getSignatureContext());
             } else {
-                var keyWrapper = session.keys().getKeysStream(session.getContext().getRealm()).filter(key -> key.getKid().equalsIgnoreCase(this.configuration.getSigningKeyId())).findFirst();
-                if (keyWrapper.isPresent()) {
-                    var key = keyWrapper.get();
-                    var algorithm = JWSAlgorithm.parse(key.getAlgorithm());
-                    logger.infof("[authenticateTokenRequest] Signing key id:", this.configuration.getSigningKeyId());
-                    logger.infof("[authenticateTokenRequest] Found key for signing the request: %s", key.getAlgorithm());
-                    logger.infof("[authenticateTokenRequest] Using key with KID: %s and algorithm: %s", key.getKid(), algorithm);
-                    jws = JwtUtil.createBearer(configuration, key, algorithm);
+                var assertions = ClientAssertionService.forIdp(session, configuration);
+                if (assertions != null) {
+                    logger.infof("[authenticateTokenRequest] Using key with KID: %s", assertions.getKeyId());
+                    try {
+                        jws = assertions.sign();
+                    } catch (JOSEException e) {
+                        throw new IdentityBrokerException("Failed to sign client assertion", e);
+                    }
                 } else {
                     logger.errorf("[authenticateTokenRequest] Unable to find matching key for signing the request %s", this.configuration.getSigningKeyId());
                 }
@@ -212,7 +227,17 @@ public class CustomOIDCProvider extends CustomDuplicator {
     @Override
     protected JsonWebToken validateToken(String encodedToken, boolean ignoreAudience) {
         logger.infof("[validateToken] Validating token in CustomOIDCProvider with ignoreAudience=%s: %s", ignoreAudience, encodedToken);
-        return JwtUtil.validateToken(getConfig(), encodedToken, ignoreAudience, this::parseTokenInput);
+        var cacheKey = ValidatedTokenCache.cacheKey(session.getContext().getRealm().getId(), getConfig().getAlias(),
+                ignoreAudience ? "token" : "token+aud", encodedToken);
+        var cached = ValidatedTokenCache.getInstance().get(cacheKey, JsonWebToken.class);
+        if (cached != null) {
+            logger.infof("[validateToken] Using cached validation result for token with sub=%s", cached.getSubject());
+            return cached;
+        }
+
+        var token = JwtUtil.validateToken(getConfig(), JweUtil.parseToken(session, getConfig(), encodedToken), ignoreAudience);
+        ValidatedTokenCache.getInstance().put(cacheKey, token, token.getExp(), getConfig().getAllowedClockSkew());
+        return token;
     }
 
     @Override
@@ -247,7 +272,7 @@ public class CustomOIDCProvider extends CustomDuplicator {
     public BrokeredIdentityContext getFederatedIdentity(String response) {
         logger.infof("[getFederatedIdentity] Getting federated identity in CustomOIDCProvider: %s", response);
 
-        var tokenResponse = JwtUtil.decryptAccessTokenResponse(response, session, this.configuration.isEncryptedIdTokenFlag());
+        var tokenResponse = JwtUtil.decryptAccessTokenResponse(response, session, this.configuration);
         var accessToken = JwtUtil.verifyAccessToken(tokenResponse);
         var encodedIdToken = tokenResponse.getIdToken();
         logger.infof("[getFederatedIdentity] Access Token: %s; EncodedIdToken: %s;", accessToken, encodedIdToken);
@@ -309,6 +334,9 @@ public class CustomOIDCProvider extends CustomDuplicator {
                 email,
                 userInfoUrl);
 
+        var claimTemplate = ClaimTemplate.forConfig(configuration);
+        var projection = AttributeProjection.forConfig(configuration);
+        JsonNode userInfo = null;
         if (!getConfig().isDisableUserInfoService()
                 && userInfoUrl != null
                 && !userInfoUrl.isEmpty()
@@ -329,7 +357,7 @@ public class CustomOIDCProvider extends CustomDuplicator {
                     throw new RuntimeException("[toIdentityContext] Unsupported content-type [" + contentType + "] in response from [" + userInfoUrl + "].");
                 }
 
-                var userInfo = FuncUtil.invoke(() -> {
+                userInfo = FuncUtil.invoke(() -> {
                     if (APPLICATION_JSON_TYPE.isCompatible(contentMediaType)) {
                         return response.asJson();
                     } else if (MediaType.valueOf("application/jwt").isCompatible(contentMediaType)) {
@@ -347,27 +375,14 @@ public class CustomOIDCProvider extends CustomDuplicator {
                 AbstractJsonUserAttributeMapper.storeUserProfileForMapper(identity, userInfo, getConfig().getAlias());
 
                 logger.infof("[toIdentityContext] UserInfo response: %s", userInfo.toString());
-                JsonUtil.printAll(userInfo, "");
-
-                for (var entry : JsonUtil.flattenJsonNode(userInfo, null, new HashMap<>()).entrySet()) {
-                    var key = entry.getKey();
-                    var value = entry.getValue();
-                    identity.setUserAttribute(key, value);
 
-                    if (key.contains("value")) {
-                        if (key.contains("email")) {
-                            email = value;
-                        }
-                        if (key.contains("name")) {
-                            name = value;
-                            givenName = value;
-                        }
-                        if (key.contains("aliasname")) {
-                            familyName = value;
-                        }
-                        if (key.contains("uinfin") && key.contains("value")) {
-                            preferredUsername = value;
-                            logger.infof("[toIdentityContext] Setting preferredUsername from uinfin value: %s", preferredUsername);
+                if (!claimTemplate.hasAttributeTemplate()) {
+                    for (var entry : JsonFlattener.flatten(userInfo, USER_INFO_EXPECTED_CLAIMS).entrySet()) {
+                        var key = entry.getKey();
+                        var value = entry.getValue();
+                        if (projection.test(key)) {
+                            logger.infof("[toIdentityContext] UserInfo claim ---> attribute: %s = %s", key, value);
+                            identity.setUserAttribute(key, value);
                         }
                     }
                 }
@@ -376,6 +391,21 @@ public class CustomOIDCProvider extends CustomDuplicator {
             logger.infof("[toIdentityContext] Skipping user info request as per configuration.");
         }
 
+        var extracted = claimTemplate.evaluate(userInfo, idToken);
+        for (var entry : extracted.attributes().entrySet()) {
+            logger.infof("[toIdentityContext] Template claim ---> attribute: %s = %s", entry.getKey(), entry.getValue());
+            identity.setUserAttribute(entry.getKey(), entry.getValue());
+        }
+        var fields = extracted.identity();
+        email = fields.getOrDefault(ClaimTemplate.EMAIL, email);
+        name = fields.getOrDefault(ClaimTemplate.NAME, name);
+        givenName = fields.getOrDefault(ClaimTemplate.FIRST_NAME, givenName);
+        familyName = fields.getOrDefault(ClaimTemplate.LAST_NAME, familyName);
+        if (fields.containsKey(ClaimTemplate.USERNAME)) {
+            preferredUsername = fields.get(ClaimTemplate.USERNAME);
+            logger.infof("[toIdentityContext] Setting preferredUsername from claim template: %s", preferredUsername);
+        }
+
         identity.getContextData().put(VALIDATED_ID_TOKEN, idToken);
         identity.getContextData().put(VALIDATED_ACCESS_TOKEN, accessToken);
         identity.setId(id);
@@ -403,8 +433,10 @@ public class CustomOIDCProvider extends CustomDuplicator {
             for (var entry : accessTokenKeyValue.entrySet()) {
                 var key = entry.getKey();
                 var value = entry.getValue();
-                logger.infof("[toIdentityContext] Access Token Claim ---> attribute: %s = %s", key, value);
-                identity.setUserAttribute(key, value);
+                if (projection.test(key)) {
+                    logger.infof("[toIdentityContext] Access Token Claim ---> attribute: %s = %s", key, value);
+                    identity.setUserAttribute(key, value);
+                }
             }
         }
 
@@ -412,8 +444,10 @@ public class CustomOIDCProvider extends CustomDuplicator {
         for (var entry : idTokenKeyValue.entrySet()) {
             var key = entry.getKey();
             var value = entry.getValue();
-            logger.infof("[toIdentityContext] ID Token Claim ---> attribute: %s = %s", key, value);
-            identity.setUserAttribute(key, value);
+            if (projection.test(key)) {
+                logger.infof("[toIdentityContext] ID Token Claim ---> attribute: %s = %s", key, value);
+                identity.setUserAttribute(key, value);
+            }
             if ("id_token.entityInfo.CPEntID".equalsIgnoreCase(key)) {
                 preferredUsername = value;
                 if (subKeyValue.get("s") != null) {
@@ -467,7 +501,7 @@ public class CustomOIDCProvider extends CustomDuplicator {
     @Override
     public void importNewUser(KeycloakSession session, RealmModel realm, UserModel user, BrokeredIdentityContext context) {
         logger.infof("[importNewUser] Importing new user in CustomOIDCProvider: %s", user.getUsername());
-        MapperUtil.mapAttributeToUser(context, user, true);
+        MapperUtil.mapAttributeToUser(context, user);
     }
 
     @Override
@@ -476,7 +510,12 @@ public class CustomOIDCProvider extends CustomDuplicator {
                                    UserModel user,
                                    BrokeredIdentityContext context) {
         logger.infof("[updateBrokeredUser] Updating brokered user in CustomOIDCProvider: %s", user.getUsername());
-        MapperUtil.mapAttributeToUser(context, user, false);
+        // drop attributes stored before the projection excluded them, e.g. the raw tokens
+        var projection = AttributeProjection.forConfig(configuration);
+        var idNumberKey = configuration.getUserAttributeKeyForIdNumber();
+        MapperUtil.mapAttributeToUser(context, user, attrKey -> projection.test(attrKey)
+                || RETAINED_ATTRIBUTES.contains(attrKey)
+                || attrKey.equals(idNumberKey));
     }
 
     @Override
@@ -499,7 +538,19 @@ public class CustomOIDCProvider extends CustomDuplicator {
                                                                            String subjectToken,
                                                                            String subjectTokenType) {
         logger.infof("[validateExternalTokenThroughUserInfo] Validating external token through user info in CustomOIDCProvider: %s, %s", subjectTokenType, subjectToken);
-        return super.validateExternalTokenThroughUserInfo(event, subjectToken, subjectTokenType);
+        var cacheKey = ValidatedTokenCache.cacheKey(session.getContext().getRealm().getId(), getConfig().getAlias(), "userinfo", subjectToken);
+        var profile = ValidatedTokenCache.getInstance().get(cacheKey, JsonNode.class);
+        if (profile != null) {
+            logger.infof("[validateExternalTokenThroughUserInfo] Using cached user info profile");
+            event.detail("validation_method", "user info");
+            return extractIdentityFromProfile(event, profile);
+        }
+
+        var context = super.validateExternalTokenThroughUserInfo(event, subjectToken, subjectTokenType);
+        if (context.getContextData().get(AbstractJsonUserAttributeMapper.CONTEXT_JSON_NODE) instanceof JsonNode userInfo) {
+            ValidatedTokenCache.getInstance().put(cacheKey, userInfo, ValidatedTokenCache.unverifiedExp(subjectToken), getConfig().getAllowedClockSkew());
+        }
+        return context;
     }
 
     @Override
@@ -6,6 +6,7 @@ import java.util.Map;
 import java.util.stream.Stream;
 
 import com.example.identity.enums.CustomOIDCConfigEnum;
+import com.example.utils.MetadataRefresher;
 import org.keycloak.broker.oidc.OIDCIdentityProvider;
 import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
 import org.keycloak.broker.oidc.OIDCIdentityProviderFactory;
@@ -35,6 +36,11 @@ public class CustomOIDCProviderFactory extends OIDCIdentityProviderFactory {
         return new CustomOIDCProvider(session, config);
     }
 
+    @Override
+    public void close() {
+        MetadataRefresher.getInstance().shutdown();
+    }
+
     @Override
     public OIDCIdentityProviderConfig createConfig() {
         return new CustomOIDCIdentityProviderConfig();
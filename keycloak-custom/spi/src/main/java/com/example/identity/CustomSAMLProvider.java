@@ -3,6 +3,7 @@ package com.example.identity;
 import com.example.config.CustomSAMLIdentityProviderConfig;
 import com.example.identity.endpoints.CustomSAMLEndpoint;
 import com.example.utils.MapperUtil;
+import com.example.utils.SamlMetadataRefresher;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriInfo;
 import org.jboss.logging.Logger;
@@ -29,6 +30,7 @@ public class CustomSAMLProvider extends SAMLIdentityProvider {
         this.session = session;
         this.config = config;
         this.destinationValidator = destinationValidator;
+        SamlMetadataRefresher.getInstance().register(session, config);
     }
 
     @Override
@@ -102,7 +104,7 @@ public class CustomSAMLProvider extends SAMLIdentityProvider {
                               UserModel user,
                               BrokeredIdentityContext context) {
         logger.infof("[importNewUser] Importing new user: %s", user.getUsername());
-        MapperUtil.mapAttributeToUser(context, user, true);
+        MapperUtil.mapAttributeToUser(context, user);
     }
 
     @Override
@@ -111,7 +113,7 @@ public class CustomSAMLProvider extends SAMLIdentityProvider {
                                    UserModel user,
                                    BrokeredIdentityContext context) {
         logger.infof("[updateBrokeredUser] Updating brokered user: %s", user.getUsername());
-        MapperUtil.mapAttributeToUser(context, user, false);
+        MapperUtil.mapAttributeToUser(context, user);
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.example.identity;
 
 import com.example.config.CustomSAMLConfigurationRepresentation;
 import com.example.config.CustomSAMLIdentityProviderConfig;
+import com.example.utils.SamlMetadataRefresher;
 import org.keycloak.Config;
 import org.keycloak.broker.saml.SAMLIdentityProvider;
 import org.keycloak.broker.saml.SAMLIdentityProviderConfig;
@@ -42,6 +43,11 @@ public class CustomSAMLProviderFactory extends SAMLIdentityProviderFactory {
         this.destinationValidator = DestinationValidator.forProtocolMap(config.getArray("knownProtocols"));
     }
 
+    @Override
+    public void close() {
+        SamlMetadataRefresher.getInstance().shutdown();
+    }
+
     @Override
     public SAMLIdentityProviderConfig createConfig() {
         return new CustomSAMLIdentityProviderConfig();
@@ -59,6 +65,8 @@ public class CustomSAMLProviderFactory extends SAMLIdentityProviderFactory {
             configMap.put(AUDIENCES_VALIDATION_FLAG, String.valueOf(configRepresentation.isAudiencesValidationFlag()));
             configMap.put(VALID_AUDIENCES, configRepresentation.getValidAudiences());
             configMap.put(SUFFIX_IDP_NAME, configRepresentation.getSuffixIdpName());
+            configMap.put(ATTRIBUTE_MAPPING, configRepresentation.getAttributeMapping());
+            configMap.put(METADATA_REFRESH_MAX_SECONDS, configRepresentation.getMetadataRefreshMaxSeconds());
 
             return configMap;
         } catch (IOException e) {
@@ -1,15 +1,14 @@
 package com.example.identity;
 
 import com.example.config.CustomOIDCIdentityProviderConfig;
+import com.example.utils.ClientAssertionService;
+import com.example.utils.JweUtil;
 import com.example.utils.JwtUtil;
+import com.example.utils.ValidatedTokenCache;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWEObject;
-import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.crypto.ECDHDecrypter;
-import com.nimbusds.jose.crypto.ECDSAVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jwt.SignedJWT;
 import jakarta.ws.rs.core.MultivaluedMap;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.UriBuilder;
@@ -17,6 +16,7 @@ import jakarta.ws.rs.core.UriInfo;
 import org.jboss.logging.Logger;
 import org.keycloak.OAuth2Constants;
 import org.keycloak.broker.oidc.OIDCIdentityProvider;
+import org.keycloak.broker.oidc.mappers.AbstractJsonUserAttributeMapper;
 import org.keycloak.broker.provider.AuthenticationRequest;
 import org.keycloak.broker.provider.BrokeredIdentityContext;
 import org.keycloak.broker.provider.IdentityBrokerException;
@@ -258,7 +258,7 @@ public class OIDCProviderVerbose extends OIDCIdentityProvider {
     public BrokeredIdentityContext getFederatedIdentity(String response) {
         logger.infof("Getting federated identity in CustomOIDCProvider: %s", response);
 
-        var tokenResponse = decryptAccessTokenResponse(response, session, this.configuration.isEncryptedIdTokenFlag());
+        var tokenResponse = decryptAccessTokenResponse(response, session, this.configuration);
         var accessToken = JwtUtil.verifyAccessToken(tokenResponse);
         var encodedIdToken = tokenResponse.getIdToken();
         logger.infof("Access Token: %s; EncodedIdToken: %s;", accessToken, encodedIdToken);
@@ -330,6 +330,19 @@ public class OIDCProviderVerbose extends OIDCIdentityProvider {
     @Override
     protected JsonWebToken validateToken(String encodedToken, boolean ignoreAudience) {
         logger.infof("Validating token in CustomOIDCProvider with ignoreAudience=%s: %s", ignoreAudience, encodedToken);
+        var cacheKey = ValidatedTokenCache.cacheKey(session.getContext().getRealm().getId(), getConfig().getAlias(),
+                ignoreAudience ? "token" : "token+aud", encodedToken);
+        var cached = ValidatedTokenCache.getInstance().get(cacheKey, JsonWebToken.class);
+        if (cached != null) {
+            logger.infof("Using cached validation result for token with sub=%s", cached.getSubject());
+            return cached;
+        }
+        var token = validateTokenUncached(encodedToken, ignoreAudience);
+        ValidatedTokenCache.getInstance().put(cacheKey, token, token.getExp(), getConfig().getAllowedClockSkew());
+        return token;
+    }
+
+    private JsonWebToken validateTokenUncached(String encodedToken, boolean ignoreAudience) {
         JsonWebToken token;
         try {
             var parseToken = this.parseTokenInput(encodedToken, true);
@@ -581,7 +594,19 @@ public class OIDCProviderVerbose extends OIDCIdentityProvider {
     @Override
     protected BrokeredIdentityContext validateExternalTokenThroughUserInfo(EventBuilder event, String subjectToken, String subjectTokenType) {
         logger.infof("Validating external token through user info in CustomOIDCProvider: %s, %s", subjectTokenType, subjectToken);
-        return super.validateExternalTokenThroughUserInfo(event, subjectToken, subjectTokenType);
+        var cacheKey = ValidatedTokenCache.cacheKey(session.getContext().getRealm().getId(), getConfig().getAlias(), "userinfo", subjectToken);
+        var profile = ValidatedTokenCache.getInstance().get(cacheKey, JsonNode.class);
+        if (profile != null) {
+            logger.infof("Using cached user info profile");
+            event.detail("validation_method", "user info");
+            return extractIdentityFromProfile(event, profile);
+        }
+
+        var context = super.validateExternalTokenThroughUserInfo(event, subjectToken, subjectTokenType);
+        if (context.getContextData().get(AbstractJsonUserAttributeMapper.CONTEXT_JSON_NODE) instanceof JsonNode userInfo) {
+            ValidatedTokenCache.getInstance().put(cacheKey, userInfo, ValidatedTokenCache.unverifiedExp(subjectToken), getConfig().getAllowedClockSkew());
+        }
+        return context;
     }
 
     /**
@@ -1036,14 +1061,14 @@ public class OIDCProviderVerbose extends OIDCIdentityProvider {
             if (configuration.getSigningKeyId() == null || configuration.getSigningKeyId().isEmpty()) {
                 jws = new JWSBuilder().type(OAuth2Constants.JWT).jsonContent(generateToken()).sign(getSignatureContext());
             } else {
-                var keyWrapper = session.keys().getKeysStream(session.getContext().getRealm()).filter(key -> key.getKid().equalsIgnoreCase(this.configuration.getSigningKeyId())).findFirst();
-                if (keyWrapper.isPresent()) {
-                    var key = keyWrapper.get();
-                    var algorithm = JWSAlgorithm.parse(key.getAlgorithm());
-                    logger.infof("Signing key id:", this.configuration.getSigningKeyId());
-                    logger.infof("Found key for signing the request: %s", key.getAlgorithm());
-                    logger.infof("Using key with KID: %s and algorithm: %s", key.getKid(), algorithm);
-                    jws = JwtUtil.createBearer(configuration, key, algorithm);
+                var assertions = ClientAssertionService.forIdp(session, configuration);
+                if (assertions != null) {
+                    logger.infof("Using key with KID: %s", assertions.getKeyId());
+                    try {
+                        jws = assertions.sign();
+                    } catch (JOSEException e) {
+                        throw new IdentityBrokerException("Failed to sign client assertion", e);
+                    }
                 } else {
                     logger.errorf("Unable to find matching key for signing the request %s", this.configuration.getSigningKeyId());
                 }
@@ -1187,54 +1212,7 @@ public class OIDCProviderVerbose extends OIDCIdentityProvider {
             return super.verify(jws);
         }
 
-        try {
-            var jwksUrl = getConfig().getJwksUrl();
-            var jwksJson = SimpleHttp.doGet(jwksUrl, session).asJson();
-            var jwkSet = JWKSet.parse(jwksJson.toString());
-            logger.infof("Fetched JWKS from URL: %s with result %s", jwksUrl, jwksJson.toString());
-
-            var kid = hdr.getKeyId();
-            var jwk = jwkSet.getKeyByKeyId(kid);
-            if (jwk == null) {
-                logger.errorf("No matching key found in JWKS for Key ID: %s", kid);
-                return false;
-            }
-
-            var compact = jws.getWireString();
-            var sjwt = SignedJWT.parse(compact);
-            if (!hdr.getAlgorithm().name().equalsIgnoreCase(sjwt.getHeader().getAlgorithm().getName())) {
-                logger.errorf("JWS alg header %s does not match SignedJWT alg %s",
-                        hdr.getAlgorithm().name(),
-                        sjwt.getHeader().getAlgorithm().getName());
-                return false;
-            }
-            if (jwk.getKeyUse() != null && !"sig".equalsIgnoreCase(jwk.getKeyUse().identifier())) {
-                logger.errorf("JWK key use is not 'sig' for Key ID: %s", kid);
-                return false;
-            }
-
-            var ok = false;
-            if ("EC".equals(jwk.getKeyType().getValue())) {
-                var ecJwk = jwk.toECKey();
-                ok = sjwt.verify(new ECDSAVerifier(ecJwk));
-            } else if ("RSA".equals(jwk.getKeyType().getValue())) {
-                ok = sjwt.verify(new RSASSAVerifier(jwk.toRSAKey()));
-            } else {
-                logger.errorf("unsupported kty=%s", jwk.getKeyType());
-                return false;
-            }
-
-            if (!ok) {
-                logger.error("signature verification failed");
-                return false;
-            } else {
-                logger.info("signature successfully verified");
-                return true;
-            }
-        } catch (Exception e) {
-            logger.error("Failed to verify token", e);
-            return false;
-        }
+        return JweUtil.verifyViaJwks(session, getConfig(), jws);
     }
 
     /**
@@ -3,6 +3,8 @@ package com.example.identity.endpoints;
 
 import com.example.config.CustomSAMLIdentityProviderConfig;
 import com.example.identity.CustomSAMLProvider;
+import com.example.utils.SamlMetadataRefresher;
+import com.example.utils.SamlSigningKeyCache;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
@@ -27,13 +29,12 @@ import org.keycloak.models.*;
 import org.keycloak.protocol.LoginProtocol;
 import org.keycloak.protocol.LoginProtocolFactory;
 import org.keycloak.protocol.saml.*;
-import org.keycloak.rotation.HardcodedKeyLocator;
+import org.keycloak.rotation.CompositeKeyLocator;
 import org.keycloak.rotation.KeyLocator;
 import org.keycloak.saml.common.constants.JBossSAMLURIConstants;
 import org.keycloak.saml.common.exceptions.ProcessingException;
 import org.keycloak.saml.processing.core.saml.v2.common.SAMLDocumentHolder;
 import org.keycloak.saml.processing.core.saml.v2.constants.X500SAMLProfileConstants;
-import org.keycloak.saml.processing.core.util.XMLSignatureUtil;
 import org.keycloak.saml.validators.DestinationValidator;
 import org.keycloak.services.ErrorPage;
 import org.keycloak.services.Urls;
@@ -42,9 +43,6 @@ import org.keycloak.services.util.CacheControlUtil;
 import org.keycloak.sessions.AuthenticationSessionModel;
 import org.keycloak.utils.StringUtil;
 
-import java.security.Key;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -168,24 +166,23 @@ public abstract class CustomBinding {
             String modelKey = PublicKeyStorageUtils.getIdpModelCacheKey(realm.getId(), config.getInternalId());
             PublicKeyLoader keyLoader = new SamlMetadataPublicKeyLoader(session, config.getMetadataDescriptorUrl());
             PublicKeyStorageProvider keyStorage = session.getProvider(PublicKeyStorageProvider.class);
-            return new SamlMetadataKeyLocator(modelKey, keyLoader, KeyUse.SIG, keyStorage);
-        }
-
-        List<Key> keys = new LinkedList<>();
-        for (String signingCertificate : config.getSigningCertificates()) {
-            X509Certificate cert = null;
-            try {
-                cert = XMLSignatureUtil.getX509CertificateFromKeyInfoString(signingCertificate.replaceAll("\\s", ""));
-                cert.checkValidity();
-                keys.add(cert.getPublicKey());
-            } catch (CertificateException e) {
-                logger.warnf("Ignoring invalid certificate: %s", cert);
-            } catch (ProcessingException e) {
-                throw new RuntimeException(e);
+            KeyLocator onDemand = new SamlMetadataKeyLocator(modelKey, keyLoader, KeyUse.SIG, keyStorage);
+            KeyLocator refreshed = SamlMetadataRefresher.getInstance().getSigningKeyLocator(realm.getId(), config);
+            if (refreshed == null) {
+                return onDemand;
             }
+            // keys fetched ahead by the refresher first, the on-demand loader only if none of them verifies
+            CompositeKeyLocator locator = new CompositeKeyLocator();
+            locator.add(refreshed);
+            locator.add(onDemand);
+            return locator;
         }
 
-        return new HardcodedKeyLocator(keys);
+        try {
+            return SamlSigningKeyCache.getInstance().get(config.getInternalId(), config.getSigningCertificates());
+        } catch (ProcessingException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     protected String getX500Attribute(AssertionType assertion, X500SAMLProfileConstants attribute) {
@@ -2,7 +2,8 @@ package com.example.identity.endpoints;
 
 import com.example.config.CustomSAMLIdentityProviderConfig;
 import com.example.identity.CustomSAMLProvider;
-import com.example.utils.SamlUtil;
+import com.example.utils.SamlAttributeExtractor;
+import com.example.utils.SamlDecryptionKeyLocator;
 import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
@@ -22,7 +23,6 @@ import org.keycloak.events.EventBuilder;
 import org.keycloak.events.EventType;
 import org.keycloak.models.*;
 import org.keycloak.protocol.saml.JaxrsSAML2BindingBuilder;
-import org.keycloak.protocol.saml.SAMLDecryptionKeysLocator;
 import org.keycloak.protocol.saml.SamlProtocol;
 import org.keycloak.protocol.saml.SamlSessionUtils;
 import org.keycloak.saml.SAML2LogoutResponseBuilder;
@@ -36,7 +36,6 @@ import org.keycloak.saml.processing.core.saml.v2.common.SAMLDocumentHolder;
 import org.keycloak.saml.processing.core.saml.v2.constants.X500SAMLProfileConstants;
 import org.keycloak.saml.processing.core.saml.v2.util.AssertionUtil;
 import org.keycloak.saml.processing.core.util.KeycloakKeySamlExtensionGenerator;
-import org.keycloak.saml.processing.core.util.XMLEncryptionUtil;
 import org.keycloak.saml.validators.ConditionsValidator;
 import org.keycloak.saml.validators.DestinationValidator;
 import org.keycloak.services.ErrorPage;
@@ -193,10 +192,11 @@ public abstract class CustomSAMLBinding extends CustomBinding {
                 return ErrorPage.error(session, authSession, Response.Status.BAD_REQUEST, Messages.INVALID_REQUESTER);
             }
 
+            // one locator for the assertion and the NameID, so the realm ENC keys are resolved once per response
+            var decryptionKeyLocator = new SamlDecryptionKeyLocator(session, realm, config.getEncryptionAlgorithm());
             Element assertionElement;
             if (assertionIsEncrypted) {
                 try {
-                    var decryptionKeyLocator = new SAMLDecryptionKeysLocator(session, realm, config.getEncryptionAlgorithm());
                     assertionElement = AssertionUtil.decryptAssertion(responseType, decryptionKeyLocator);
                 } catch (ProcessingException ex) {
                     logger.warnf(ex, "Not possible to decrypt SAML assertion. Please check realm keys of usage ENC in the realm '%s' and make sure there is a key able to decrypt the assertion encrypted by identity provider '%s'", realm.getName(), config.getAlias());
@@ -242,7 +242,6 @@ public abstract class CustomSAMLBinding extends CustomBinding {
 
             if (AssertionUtil.isIdEncrypted(responseType)) {
                 try {
-                    XMLEncryptionUtil.DecryptionKeyLocator decryptionKeyLocator = new SAMLDecryptionKeysLocator(session, realm, config.getEncryptionAlgorithm());
                     AssertionUtil.decryptId(responseType, decryptionKeyLocator);
                 } catch (ProcessingException ex) {
                     logger.warnf(ex, "Not possible to decrypt SAML encryptedId. Please check realm keys of usage ENC in the realm '%s' and make sure there is a key able to decrypt the encryptedId encrypted by identity provider '%s'", realm.getName(), config.getAlias());
@@ -278,21 +277,10 @@ public abstract class CustomSAMLBinding extends CustomBinding {
             identity.setAuthenticationSession(authSession);
             identity.setUsername(principal);
 
-            // map all saml response document and object
-            {
-                for (var document : SamlUtil.flatten(holder.getSamlDocument()).entrySet()) {
-                    var key = document.getKey();
-                    var value = document.getValue();
-                    logger.infof("SAML Response Document - %s: %s", key, value);
-                    identity.setUserAttribute(key, value);
-                }
-
-                for (var object : SamlUtil.flatten(holder.getSamlObject()).entrySet()) {
-                    var key = object.getKey();
-                    var value = object.getValue();
-                    logger.infof("SAML Response Object - %s: %s", key, value);
-                    identity.setUserAttribute(key, value);
-                }
+            // map assertion attributes, NameID, AuthnStatement and Conditions
+            for (var entry : SamlAttributeExtractor.extract(assertion, subjectNameID, config.getAttributeMapping()).entrySet()) {
+                logger.infof("SAML Assertion - %s: %s", entry.getKey(), entry.getValue());
+                identity.setUserAttribute(entry.getKey(), entry.getValue());
             }
 
             //SAML Spec 2.2.2 Format is optional
@@ -10,12 +10,22 @@ public enum CustomOIDCConfigEnum {
     FORWARDED_HEADER("Forwarder Header Name", "forwarderHeaderName", ProviderConfigProperty.STRING_TYPE),
     IDP_DIFF_TIMES("IDP Different Times (Seconds)", "idpDifferentTimes", ProviderConfigProperty.STRING_TYPE),
     VALIDATE_NONCE_FLAG("Validate Nonce ?", "validateNonce", ProviderConfigProperty.BOOLEAN_TYPE),
+    JWKS_CACHE_MIN_TTL("JWKS Cache Min TTL (Seconds)", "jwksCacheMinTtl", ProviderConfigProperty.STRING_TYPE),
+    JWKS_CACHE_MAX_TTL("JWKS Cache Max TTL (Seconds)", "jwksCacheMaxTtl", ProviderConfigProperty.STRING_TYPE),
 
     // User Details
-    CLAIM_EXTRACT_TEMPLATE("Claim Extraction Template", "claimExtractionTemplate", ProviderConfigProperty.STRING_TYPE),
+    CLAIM_EXTRACT_TEMPLATE("Identity fields as target=path pairs, e.g. username=uinfin.value,email=/email/value or lastName=id_token:family_name. Targets: username, email, name, firstName, lastName.",
+            "Claim Extraction Template", "claimExtractionTemplate", ProviderConfigProperty.STRING_TYPE),
     HASH_USERNAME_FLAG("Hash The Username ?", "hashUsernameFlag", ProviderConfigProperty.BOOLEAN_TYPE),
     IDP_NAME_SUFFIX("Username Suffix", "suffixIdpName", ProviderConfigProperty.STRING_TYPE),
-    CLAIM_EXTRACT_TO_ATTR_TEMPLATE("Claim To Attribute Template", "claimExtractionToAttributeTemplate", ProviderConfigProperty.STRING_TYPE),
+    CLAIM_EXTRACT_TO_ATTR_TEMPLATE("User attributes as attribute=path pairs. When set, only these claims are copied to user attributes instead of the whole userinfo response.",
+            "Claim To Attribute Template", "claimExtractionToAttributeTemplate", ProviderConfigProperty.STRING_TYPE),
+    ATTR_INCLUDE_PATTERNS("Comma separated globs of the claims copied to user attributes, e.g. uinfin.*,id_token.entityInfo.*. Blank copies every claim.",
+            "Attribute Include Patterns", "attributeIncludePatterns", ProviderConfigProperty.STRING_TYPE),
+    ATTR_EXCLUDE_PATTERNS("Comma separated globs of the claims never copied to user attributes, in addition to the raw access, ID and refresh tokens.",
+            "Attribute Exclude Patterns", "attributeExcludePatterns", ProviderConfigProperty.STRING_TYPE),
+    KEEP_RAW_TOKEN_ATTRS_FLAG("Also copy the raw access, ID and refresh tokens to user attributes.",
+            "Keep Raw Token Attributes ?", "keepRawTokenAttributesFlag", ProviderConfigProperty.BOOLEAN_TYPE),
 
     // Client IDs for redirection
     REDIRECT_CLIENTS("Client IDs", "redirectClients", ProviderConfigProperty.STRING_TYPE),
@@ -1,18 +1,12 @@
 package com.example.key;
 
 import org.jboss.logging.Logger;
-import org.keycloak.common.util.Base64;
 import org.keycloak.component.ComponentModel;
 import org.keycloak.crypto.KeyUse;
 import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.keys.AbstractEcdsaKeyProvider;
 import org.keycloak.models.RealmModel;
 
-import java.security.KeyFactory;
-import java.security.KeyPair;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
-
 public class ECDSAKeyProvider extends AbstractEcdsaKeyProvider {
     private static final Logger LOGGER = Logger.getLogger(ECDSAKeyProvider.class);
 
@@ -35,14 +29,8 @@ public class ECDSAKeyProvider extends AbstractEcdsaKeyProvider {
         var ecInNistRep = model.getConfig().getFirst(ECDSA_ELLIPTIC_CURVE_KEY);
 
         try {
-            var privateKeySpec = new PKCS8EncodedKeySpec(Base64.decode(privateEcdsaKeyBase64Encoded));
-            var kf = KeyFactory.getInstance("EC");
-            var decodedPrivateKey = kf.generatePrivate(privateKeySpec);
-
-            var publicKeySpec = new X509EncodedKeySpec(Base64.decode(publicEcdsaKeyBase64Encoded));
-            var decodedPublicKey = kf.generatePublic(publicKeySpec);
-
-            var keyPair = new KeyPair(decodedPublicKey, decodedPrivateKey);
+            var keyPair = ECDSAKeyProviderFactory.decodeKeyPair(
+                    model.getId(), privateEcdsaKeyBase64Encoded, publicEcdsaKeyBase64Encoded);
             var keyWrapper = createKeyWrapper(keyPair, ecInNistRep);
 
             var keyUse = KeyUse
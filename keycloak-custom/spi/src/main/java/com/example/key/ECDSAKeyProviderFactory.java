@@ -17,8 +17,15 @@ import org.keycloak.models.RealmModel;
 import org.keycloak.provider.ConfigurationValidationHelper;
 import org.keycloak.provider.ProviderConfigProperty;
 
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.keycloak.provider.ProviderConfigProperty.LIST_TYPE;
 
@@ -87,6 +94,12 @@ public class ECDSAKeyProviderFactory extends AbstractEcdsaKeyProviderFactory {
         Map.entry("enc", KeyUse.ENCRYPTION)
     );
 
+    /**
+     * Decoded key pair per component id. {@link #create} builds a provider per session, so
+     * without this every ENC key lookup would decode the PKCS#8 and X.509 blobs again.
+     */
+    private static final Map<String, DecodedKey> DECODED_KEYS = new ConcurrentHashMap<>();
+
     public ECDSAKeyProviderFactory() {
         super();
     }
@@ -111,6 +124,23 @@ public class ECDSAKeyProviderFactory extends AbstractEcdsaKeyProviderFactory {
         return ID;
     }
 
+    @Override
+    public void onCreate(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void onUpdate(KeycloakSession session, RealmModel realm, ComponentModel oldModel, ComponentModel newModel) {
+        DECODED_KEYS.remove(newModel.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void preRemove(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        DECODED_KEYS.remove(model.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
     @Override
     public void validateConfiguration(KeycloakSession session, RealmModel realm, ComponentModel model)
             throws ComponentValidationException {
@@ -146,4 +176,30 @@ public class ECDSAKeyProviderFactory extends AbstractEcdsaKeyProviderFactory {
             throw new ComponentValidationException("Failed to generate ECDSA keys", e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Key pair stored on {@code componentId}, decoded once per distinct key material.
+     */
+    static KeyPair decodeKeyPair(String componentId, String privateKeyBase64, String publicKeyBase64)
+            throws GeneralSecurityException, IOException {
+        var cached = DECODED_KEYS.get(componentId);
+        if (cached != null && cached.matches(privateKeyBase64, publicKeyBase64)) {
+            return cached.keyPair();
+        }
+
+        var kf = KeyFactory.getInstance("EC");
+        var decodedPrivateKey = kf.generatePrivate(new PKCS8EncodedKeySpec(Base64.decode(privateKeyBase64)));
+        var decodedPublicKey = kf.generatePublic(new X509EncodedKeySpec(Base64.decode(publicKeyBase64)));
+        var keyPair = new KeyPair(decodedPublicKey, decodedPrivateKey);
+
+        DECODED_KEYS.put(componentId, new DecodedKey(privateKeyBase64, publicKeyBase64, keyPair));
+        LOGGER.debugf("[decodeKeyPair] Decoded key pair for component %s", componentId);
+        return keyPair;
+    }
+
+    private record DecodedKey(String privateKeyBase64, String publicKeyBase64, KeyPair keyPair) {
+        boolean matches(String privateKey, String publicKey) {
+            return privateKeyBase64.equals(privateKey) && publicKeyBase64.equals(publicKey);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.key;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import org.jboss.logging.Logger;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyType;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * A JWK Set loaded from a mounted file, such as a Kubernetes secret. The set is parsed once
+ * into immutable {@link FileKey}s and replaced atomically when the file content changes, so
+ * readers always see either the old or the new set. A file that fails to parse leaves the
+ * previous set in place. Reloads are driven by {@link JwkSetFileWatcher}, so request threads
+ * only ever read the loaded set.
+ * <p>
+ * Besides the standard JWK members, each key may carry a {@code "status"} of {@code active}
+ * (the default), {@code passive} or {@code disabled}, so a new key can be published next to
+ * the one it replaces during an overlap period. EC and RSA keys are supported; others are
+ * skipped.
+ */
+public class JwkSetFile {
+    private static final Logger logger = Logger.getLogger(JwkSetFile.class);
+
+    private final Path path;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final Set<String> realmIds = ConcurrentHashMap.newKeySet();
+    private final Consumer<String> onRealmKeysChanged;
+
+    JwkSetFile(Path path, Consumer<String> onRealmKeysChanged) {
+        this.path = path;
+        this.onRealmKeysChanged = onRealmKeysChanged;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Set as of the last successful reload.
+     */
+    public Snapshot current() {
+        return snapshot.get();
+    }
+
+    /**
+     * Remember that a realm serves keys from this file, so its key indexes are dropped when
+     * the file changes.
+     */
+    public void usedBy(String realmId) {
+        if (realmId != null) {
+            realmIds.add(realmId);
+        }
+    }
+
+    /**
+     * Re-read the file and swap in the new set if the content changed. Returns whether the
+     * set was replaced.
+     */
+    synchronized boolean reload() {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (IOException e) {
+            logger.warnf("[reload] Unable to read JWK set %s, keeping %d loaded keys: %s",
+                    path, snapshot.get().keys().size(), e.getMessage());
+            return false;
+        }
+
+        var digest = digest(content);
+        if (digest.equals(snapshot.get().digest())) {
+            return false;
+        }
+        try {
+            var keys = parse(new String(content, StandardCharsets.UTF_8));
+            snapshot.set(new Snapshot(keys, digest));
+            logger.infof("[reload] Loaded %d keys from %s, kids=%s",
+                    keys.size(), path, keys.stream().map(FileKey::kid).toList());
+        } catch (Exception e) {
+            logger.errorf(e, "[reload] Invalid JWK set in %s, keeping %d loaded keys", path, snapshot.get().keys().size());
+            return false;
+        }
+        realmIds.forEach(onRealmKeysChanged);
+        return true;
+    }
+
+    /**
+     * Parse a JWK Set document.
+     */
+    static List<FileKey> parse(String json) throws ParseException, JOSEException {
+        var set = JSONObjectUtils.parse(json);
+        var members = JSONObjectUtils.getJSONObjectArray(set, "keys");
+        if (members == null) {
+            throw new ParseException("missing \"keys\" member", 0);
+        }
+
+        var keys = new ArrayList<FileKey>(members.length);
+        for (var member : members) {
+            var jwk = JWK.parse(member);
+            var status = status((String) member.get("status"));
+            var kid = jwk.getKeyID() != null ? jwk.getKeyID() : jwk.computeThumbprint().toString();
+            var chain = jwk.getParsedX509CertChain() != null ? List.copyOf(jwk.getParsedX509CertChain()) : List.<X509Certificate>of();
+            if (jwk instanceof ECKey ec) {
+                var use = use(jwk);
+                keys.add(new FileKey(kid, algorithm(jwk, use), use, KeyType.EC, status,
+                        ec.toECPublicKey(), ec.isPrivate() ? ec.toECPrivateKey() : null, chain));
+            } else if (jwk instanceof RSAKey rsa) {
+                var use = use(jwk);
+                keys.add(new FileKey(kid, algorithm(jwk, use), use, KeyType.RSA, status,
+                        rsa.toRSAPublicKey(), rsa.isPrivate() ? rsa.toRSAPrivateKey() : null, chain));
+            } else {
+                logger.warnf("[parse] Skipping key %s of unsupported type %s", kid, jwk.getKeyType());
+            }
+        }
+        return List.copyOf(keys);
+    }
+
+    static KeyStatus status(String status) throws ParseException {
+        if (status == null || status.isBlank()) {
+            return KeyStatus.ACTIVE;
+        }
+        try {
+            return KeyStatus.valueOf(status.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("invalid key status: " + status, 0);
+        }
+    }
+
+    private static KeyUse use(JWK jwk) {
+        if (jwk.getKeyUse() != null) {
+            return com.nimbusds.jose.jwk.KeyUse.ENCRYPTION.equals(jwk.getKeyUse()) ? KeyUse.ENC : KeyUse.SIG;
+        }
+        if (jwk.getAlgorithm() != null) {
+            var algorithm = JWEAlgorithm.parse(jwk.getAlgorithm().getName());
+            if (JWEAlgorithm.Family.ASYMMETRIC.contains(algorithm)) {
+                return KeyUse.ENC;
+            }
+        }
+        return KeyUse.SIG;
+    }
+
+    private static String algorithm(JWK jwk, KeyUse use) {
+        if (jwk.getAlgorithm() != null) {
+            return jwk.getAlgorithm().getName();
+        }
+        if (jwk instanceof ECKey ec) {
+            if (use == KeyUse.ENC) {
+                return "ECDH-ES+A256KW";
+            }
+            if (Curve.P_384.equals(ec.getCurve())) {
+                return "ES384";
+            }
+            return Curve.P_521.equals(ec.getCurve()) ? "ES512" : "ES256";
+        }
+        return use == KeyUse.ENC ? "RSA-OAEP-256" : "RS256";
+    }
+
+    static String digest(byte[] content) {
+        try {
+            return new String(MessageDigest.getInstance("SHA-256").digest(content), StandardCharsets.ISO_8859_1);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record Snapshot(List<FileKey> keys, String digest) {
+        static final Snapshot EMPTY = new Snapshot(List.of(), "");
+    }
+
+    /**
+     * One key of the set, independent of the component that publishes it.
+     */
+    public record FileKey(String kid,
+                          String algorithm,
+                          KeyUse use,
+                          String type,
+                          KeyStatus status,
+                          PublicKey publicKey,
+                          PrivateKey privateKey,
+                          List<X509Certificate> certificateChain) {
+
+        /**
+         * Key as published by the component {@code providerId}. The component's enabled and
+         * active flags can only narrow the status from the file.
+         */
+        KeyWrapper toKeyWrapper(String providerId, long priority, boolean enabled, boolean active) {
+            var key = new KeyWrapper();
+            key.setKid(kid);
+            key.setAlgorithm(algorithm);
+            key.setUse(use);
+            key.setType(type);
+            key.setProviderId(providerId);
+            key.setProviderPriority(priority);
+            key.setStatus(KeyStatus.from(active && status.isActive(), enabled && status.isEnabled()));
+            key.setPublicKey(publicKey);
+            if (privateKey != null) {
+                key.setPrivateKey(privateKey);
+            }
+            if (!certificateChain.isEmpty()) {
+                key.setCertificate(certificateChain.get(0));
+                key.setCertificateChain(certificateChain);
+            }
+            return key;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.key;
+
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.keys.KeyProvider;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public class JwkSetFileKeyProvider implements KeyProvider {
+    private final List<KeyWrapper> keys;
+
+    public JwkSetFileKeyProvider(List<KeyWrapper> keys) {
+        this.keys = keys;
+    }
+
+    @Override
+    public Stream<KeyWrapper> getKeysStream() {
+        return this.keys.stream();
+    }
+
+    @Override
+    public void close() {
+        // nothing to close
+    }
+}
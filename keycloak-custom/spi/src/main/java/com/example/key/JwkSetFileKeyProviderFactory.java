@@ -0,0 +1,143 @@
+package com.example.key;
+
+import org.jboss.logging.Logger;
+import org.keycloak.component.ComponentModel;
+import org.keycloak.component.ComponentValidationException;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.keys.Attributes;
+import org.keycloak.keys.KeyProviderFactory;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.provider.ConfigurationValidationHelper;
+import org.keycloak.provider.ProviderConfigProperty;
+import org.keycloak.provider.ProviderConfigurationBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Publishes every EC and RSA key of a JWK Set file, typically a mounted Kubernetes secret, so
+ * rotating keys is a matter of updating the secret instead of editing one component per key.
+ * See {@link JwkSetFile} for the per-key {@code status} member and {@link JwkSetFileWatcher}
+ * for how changes are picked up.
+ */
+public class JwkSetFileKeyProviderFactory implements KeyProviderFactory<JwkSetFileKeyProvider> {
+    private static final Logger logger = Logger.getLogger(JwkSetFileKeyProviderFactory.class);
+
+    public static final String ID = "jwk-set-file";
+    public static final String CFG_PATH = "jwkSetFile";
+
+    static final ProviderConfigProperty P_PATH = new ProviderConfigProperty(
+            CFG_PATH, "JWK Set file",
+            """
+                    absolute path of a JWK Set file (e.g. a mounted secret). keys may set "status" to active, passive or disabled
+                    """,
+            ProviderConfigProperty.STRING_TYPE, ""
+    );
+
+    /**
+     * Key wrappers per component id, rebuilt when the file content or the component config
+     * changes.
+     */
+    private final Map<String, CachedKeys> keys = new ConcurrentHashMap<>();
+
+    public JwkSetFileKeyProviderFactory() {
+        // empty constructor
+    }
+
+    @Override
+    public String getId() {
+        return ID;
+    }
+
+    @Override
+    public JwkSetFileKeyProvider create(KeycloakSession session, ComponentModel model) {
+        var path = model.get(CFG_PATH);
+        if (path == null || path.isBlank()) {
+            return new JwkSetFileKeyProvider(List.of());
+        }
+        var file = JwkSetFileWatcher.getInstance().file(Path.of(path));
+        file.usedBy(model.getParentId());
+
+        var snapshot = file.current();
+        var configHash = model.getConfig().hashCode();
+        var cached = keys.get(model.getId());
+        if (cached == null || cached.snapshot() != snapshot || cached.configHash() != configHash) {
+            logger.debugf("[create] Building keys of component %s from %s", model.getId(), path);
+            var priority = model.get(Attributes.PRIORITY_KEY, 0L);
+            var enabled = model.get(Attributes.ENABLED_KEY, true);
+            var active = model.get(Attributes.ACTIVE_KEY, true);
+            var wrappers = snapshot.keys().stream()
+                    .map(key -> key.toKeyWrapper(model.getId(), priority, enabled, active))
+                    .toList();
+            cached = new CachedKeys(snapshot, configHash, wrappers);
+            keys.put(model.getId(), cached);
+        }
+        return new JwkSetFileKeyProvider(cached.keys().stream().map(KeyWrapper::cloneKey).toList());
+    }
+
+    @Override
+    public String getHelpText() {
+        return "load a JWK Set (EC and RSA keys) from a file and reload it when the file changes";
+    }
+
+    @Override
+    public void validateConfiguration(KeycloakSession session, RealmModel realm, ComponentModel model)
+            throws ComponentValidationException {
+        ConfigurationValidationHelper.check(model)
+                .checkLong(Attributes.PRIORITY_PROPERTY, false)
+                .checkBoolean(Attributes.ENABLED_PROPERTY, false)
+                .checkBoolean(Attributes.ACTIVE_PROPERTY, false)
+                .checkSingle(P_PATH, true);
+
+        var path = model.get(CFG_PATH);
+        try {
+            var loaded = JwkSetFile.parse(Files.readString(Path.of(path)));
+            if (loaded.isEmpty()) {
+                throw new ComponentValidationException("JWK Set file " + path + " contains no EC or RSA keys");
+            }
+        } catch (ComponentValidationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ComponentValidationException("Unable to load JWK Set file " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void onCreate(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void onUpdate(KeycloakSession session, RealmModel realm, ComponentModel oldModel, ComponentModel newModel) {
+        keys.remove(newModel.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void preRemove(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        keys.remove(model.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void close() {
+        JwkSetFileWatcher.getInstance().shutdown();
+    }
+
+    @Override
+    public List<ProviderConfigProperty> getConfigProperties() {
+        return ProviderConfigurationBuilder.create()
+                .property(Attributes.PRIORITY_PROPERTY)
+                .property(Attributes.ENABLED_PROPERTY)
+                .property(Attributes.ACTIVE_PROPERTY)
+                .property(P_PATH)
+                .build();
+    }
+
+    private record CachedKeys(JwkSetFile.Snapshot snapshot, int configHash, List<KeyWrapper> keys) {
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.key;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directories of the JWK Set files used by {@link JwkSetFileKeyProviderFactory}
+ * and reloads a file as soon as its directory changes. The directory is watched rather than
+ * the file because Kubernetes updates a mounted secret by swapping a symlink next to it.
+ * <p>
+ * One daemon thread serves every file. Events are debounced for {@link #DEBOUNCE_MILLIS} so
+ * a secret update that touches several entries causes one reload. Every
+ * {@link #CHECK_INTERVAL_MILLIS} the same thread also re-reads all files, which covers
+ * platforms where file watching misses the update. A reload drops the key indexes of every
+ * realm that uses the file.
+ */
+public class JwkSetFileWatcher {
+    private static final Logger logger = Logger.getLogger(JwkSetFileWatcher.class);
+
+    static final long DEBOUNCE_MILLIS = 250;
+    static final long CHECK_INTERVAL_MILLIS = 30_000;
+
+    private static final JwkSetFileWatcher INSTANCE = new JwkSetFileWatcher();
+
+    private final ConcurrentMap<Path, JwkSetFile> files = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Path, List<JwkSetFile>> directories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    private JwkSetFileWatcher() {
+    }
+
+    public static JwkSetFileWatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loaded file for {@code path}, loading and watching it on first use.
+     */
+    public JwkSetFile file(Path path) {
+        var normalized = path.toAbsolutePath().normalize();
+        var file = files.get(normalized);
+        if (file != null) {
+            return file;
+        }
+        synchronized (this) {
+            file = files.get(normalized);
+            if (file == null) {
+                if (thread == null) {
+                    start();
+                }
+                file = new JwkSetFile(normalized, RealmKeyCaches::invalidate);
+                file.reload();
+                watch(file);
+                files.put(normalized, file);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Stop watching. A file requested afterwards starts a new watcher thread.
+     */
+    public synchronized void shutdown() {
+        if (thread != null) {
+            logger.info("[shutdown] Stopping JWK set file watcher");
+            thread.interrupt();
+            thread = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.warnf("[shutdown] Failed to close watch service: %s", e.getMessage());
+            }
+            watchService = null;
+        }
+        files.clear();
+        directories.clear();
+    }
+
+    private void watch(JwkSetFile file) {
+        var directory = file.getPath().getParent();
+        if (watchService == null || directory == null) {
+            return;
+        }
+        try {
+            if (!directories.containsKey(directory)) {
+                directory.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                logger.infof("[watch] Watching %s for JWK set changes", directory);
+            }
+            directories.computeIfAbsent(directory, d -> new CopyOnWriteArrayList<>()).add(file);
+        } catch (IOException | RuntimeException e) {
+            logger.warnf("[watch] Unable to watch %s, falling back to periodic checks: %s", directory, e.getMessage());
+        }
+    }
+
+    private void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | RuntimeException e) {
+            logger.warnf("[start] File watching is not available, falling back to periodic checks: %s", e.getMessage());
+        }
+        var service = watchService;
+        thread = new Thread(() -> run(service), "jwk-set-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(WatchService service) {
+        var checkedAt = System.currentTimeMillis();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                var timeout = Math.max(1, checkedAt + CHECK_INTERVAL_MILLIS - System.currentTimeMillis());
+                WatchKey key = null;
+                if (service != null) {
+                    key = service.poll(timeout, TimeUnit.MILLISECONDS);
+                } else {
+                    Thread.sleep(timeout);
+                }
+                if (key != null) {
+                    Thread.sleep(DEBOUNCE_MILLIS);
+                    key.pollEvents();
+                    var directory = (Path) key.watchable();
+                    for (var file : directories.getOrDefault(directory, List.of())) {
+                        file.reload();
+                    }
+                    key.reset();
+                }
+
+                var now = System.currentTimeMillis();
+                if (now - checkedAt >= CHECK_INTERVAL_MILLIS) {
+                    files.values().forEach(JwkSetFile::reload);
+                    checkedAt = now;
+                }
+            } catch (ClosedWatchServiceException e) {
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.errorf(e, "[run] Failed to process JWK set file change");
+            }
+        }
+    }
+}
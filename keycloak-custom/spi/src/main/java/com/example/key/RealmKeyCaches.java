@@ -0,0 +1,19 @@
+package com.example.key;
+
+import com.example.utils.ClientAssertionService;
+import com.example.utils.DecryptionKeyIndex;
+
+/**
+ * The caches built from a realm's keys: the decryption key index and the client assertion
+ * signers. Both must be dropped whenever a key component or key file of the realm changes.
+ */
+public final class RealmKeyCaches {
+
+    private RealmKeyCaches() {
+    }
+
+    public static void invalidate(String realmId) {
+        DecryptionKeyIndex.getInstance().invalidate(realmId);
+        ClientAssertionService.invalidate(realmId);
+    }
+}
@@ -1,15 +1,23 @@
 package com.example.key;
 
+import com.example.utils.KeyUtil;
+import org.jboss.logging.Logger;
 import org.keycloak.component.ComponentModel;
+import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.keys.Attributes;
 import org.keycloak.keys.KeyProviderFactory;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 import org.keycloak.provider.ProviderConfigProperty;
 import org.keycloak.provider.ProviderConfigurationBuilder;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SingleJwkKeyProviderFactory implements KeyProviderFactory<SingleJwkKeyProvider> {
+    private static final Logger logger = Logger.getLogger(SingleJwkKeyProviderFactory.class);
+
     public static final String ID = "uploaded-single-jwk";
     public static final String CFG_JWK = "jwkJson";
     public static final String CFG_USE = "forceUse"; // auto|sig|enc
@@ -41,6 +49,13 @@ public class SingleJwkKeyProviderFactory implements KeyProviderFactory<SingleJwk
         }
     }
 
+    /**
+     * Parsed key per component id. {@link #create} runs once per session, so the JWK is only
+     * parsed again when the component config changes, which the config hash also catches when
+     * the update was made on another node.
+     */
+    private final Map<String, CachedKey> keys = new ConcurrentHashMap<>();
+
     public SingleJwkKeyProviderFactory() {
         // empty constructor
     }
@@ -52,7 +67,14 @@ public class SingleJwkKeyProviderFactory implements KeyProviderFactory<SingleJwk
 
     @Override
     public SingleJwkKeyProvider create(KeycloakSession session, ComponentModel model) {
-        return new SingleJwkKeyProvider(session, model);
+        var configHash = model.getConfig().hashCode();
+        var cached = keys.get(model.getId());
+        if (cached == null || cached.configHash() != configHash) {
+            logger.debugf("[create] Parsing JWK for component %s", model.getId());
+            cached = new CachedKey(configHash, KeyUtil.toKeyWrapper(model));
+            keys.put(model.getId(), cached);
+        }
+        return new SingleJwkKeyProvider(cached.key() != null ? cached.key().cloneKey() : null);
     }
 
     @Override
@@ -60,6 +82,23 @@ public class SingleJwkKeyProviderFactory implements KeyProviderFactory<SingleJwk
         return "register exactly one uploaded JWK (EC)";
     }
 
+    @Override
+    public void onCreate(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void onUpdate(KeycloakSession session, RealmModel realm, ComponentModel oldModel, ComponentModel newModel) {
+        keys.remove(newModel.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
+    @Override
+    public void preRemove(KeycloakSession session, RealmModel realm, ComponentModel model) {
+        keys.remove(model.getId());
+        RealmKeyCaches.invalidate(realm.getId());
+    }
+
     @Override
     public List<ProviderConfigProperty> getConfigProperties() {
         return ProviderConfigurationBuilder.create()
@@ -71,4 +110,7 @@ public class SingleJwkKeyProviderFactory implements KeyProviderFactory<SingleJwk
                 .property(P_PRIORITY)
                 .build();
     }
+
+    private record CachedKey(int configHash, KeyWrapper key) {
+    }
 }
@@ -1,6 +1,7 @@
 package com.example.resources;
 
 import com.example.resources.dto.UserPayloadDto;
+import com.example.utils.CompactJose;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -10,7 +11,8 @@ import org.keycloak.services.resource.RealmResourceProvider;
 
 import jakarta.ws.rs.ForbiddenException;
 import jakarta.ws.rs.NotAuthorizedException;
-import java.util.Base64;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Locale;
 
 public abstract class AlternateApiProvider implements RealmResourceProvider {
@@ -36,11 +38,13 @@ public abstract class AlternateApiProvider implements RealmResourceProvider {
     }
 
     protected UserPayloadDto parseAuthorizationToken(String authorizationHeader) throws JsonProcessingException {
-        var accessToken = authorizationHeader.replace("Bearer", "").trim();
-        var encodedPayload = accessToken.split("\\.")[1];
-        var payload = new String(Base64.getUrlDecoder().decode(encodedPayload));
-
-        return objectMapper.readValue(payload, UserPayloadDto.class);
+        try {
+            return CompactJose.parseBearer(authorizationHeader).readPayload(objectMapper, UserPayloadDto.class);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     protected void validateAuthorizationTokenExpiry(UserPayloadDto userPayloadDto) {
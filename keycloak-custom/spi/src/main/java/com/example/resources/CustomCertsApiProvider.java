@@ -1,9 +1,12 @@
 package com.example.resources;
 
+import com.example.utils.PublishedJwksCache;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.CacheControl;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import org.keycloak.crypto.KeyType;
@@ -11,10 +14,13 @@ import org.keycloak.jose.jwk.JSONWebKeySet;
 import org.keycloak.jose.jwk.JWK;
 import org.keycloak.jose.jwk.JWKBuilder;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
 import org.keycloak.services.cors.Cors;
 import org.keycloak.services.resource.RealmResourceProvider;
-import org.keycloak.services.util.CacheControlUtil;
+import org.keycloak.util.JsonSerialization;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.List;
@@ -25,8 +31,10 @@ import static java.util.Objects.nonNull;
 
 public class CustomCertsApiProvider implements RealmResourceProvider {
 
-    public CustomCertsApiProvider() {
+    private final int maxAge;
 
+    public CustomCertsApiProvider(int maxAge) {
+        this.maxAge = maxAge;
     }
 
     @Override
@@ -43,6 +51,26 @@ public class CustomCertsApiProvider implements RealmResourceProvider {
     @Produces(MediaType.APPLICATION_JSON)
     public Response certs(@Context final KeycloakSession session) {
         var realm = session.getContext().getRealm();
+        var document = PublishedJwksCache.getInstance()
+                .get(realm.getId(), session.keys().getKeysStream(realm), () -> serialize(buildKeySet(session, realm)));
+
+        var cacheControl = new CacheControl();
+        cacheControl.setMaxAge(maxAge);
+        var ifNoneMatch = session.getContext().getRequestHeaders().getHeaderString(HttpHeaders.IF_NONE_MATCH);
+        var responseBuilder = document.matches(ifNoneMatch)
+                ? Response.notModified()
+                : Response.ok(document.body(), MediaType.APPLICATION_JSON_TYPE);
+        responseBuilder.header(HttpHeaders.ETAG, document.etag())
+                .cacheControl(cacheControl);
+        // return Cors.add(session.getContext().getHttpRequest(),
+        // responseBuilder).allowedOrigins("*").auth().build();
+        return Cors.builder()
+                .allowedOrigins("*")
+                .auth()
+                .add(responseBuilder);
+    }
+
+    private static JSONWebKeySet buildKeySet(KeycloakSession session, RealmModel realm) {
         var jwks = session.keys().getKeysStream(realm)
                 .filter(k -> k.getStatus().isEnabled() && nonNull(k.getPublicKey()))
                 .map(k -> {
@@ -63,15 +91,15 @@ public class CustomCertsApiProvider implements RealmResourceProvider {
                 .toArray(JWK[]::new);
         var keySet = new JSONWebKeySet();
         keySet.setKeys(jwks);
+        return keySet;
+    }
 
-        var responseBuilder = Response.ok(keySet)
-                .cacheControl(CacheControlUtil.getDefaultCacheControl());
-        // return Cors.add(session.getContext().getHttpRequest(),
-        // responseBuilder).allowedOrigins("*").auth().build();
-        return Cors.builder()
-                .allowedOrigins("*")
-                .auth()
-                .add(responseBuilder);
+    private static byte[] serialize(JSONWebKeySet keySet) {
+        try {
+            return JsonSerialization.writeValueAsBytes(keySet);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-}
\ No newline at end of file
+}
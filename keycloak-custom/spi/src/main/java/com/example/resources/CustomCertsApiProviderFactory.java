@@ -1,15 +1,24 @@
 package com.example.resources;
 
+import org.keycloak.Config;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.services.resource.RealmResourceProvider;
 
 public class CustomCertsApiProviderFactory extends AlternateApiProviderFactory {
 
     public static final String ID = "oidc";
+    static final int DEFAULT_JWKS_MAX_AGE = 60;
+
+    private int jwksMaxAge = DEFAULT_JWKS_MAX_AGE;
+
+    @Override
+    public void init(Config.Scope config) {
+        jwksMaxAge = config.getInt("jwksMaxAge", DEFAULT_JWKS_MAX_AGE);
+    }
 
     @Override
     public RealmResourceProvider create(KeycloakSession session) {
-        return new CustomCertsApiProvider();
+        return new CustomCertsApiProvider(jwksMaxAge);
     }
 
     @Override
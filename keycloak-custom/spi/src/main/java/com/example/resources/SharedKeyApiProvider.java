@@ -3,6 +3,8 @@ package com.example.resources;
 import com.example.resources.dto.ResponseModelUtil;
 import com.example.resources.dto.SharedKeyRequest;
 import com.example.resources.dto.UserPayloadDto;
+import com.example.utils.AuthorizationDecisionCache;
+import com.example.utils.AuthorizationDecisionCache.Decision;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
@@ -14,13 +16,11 @@ import org.keycloak.common.util.Base64;
 import org.keycloak.crypto.KeyUse;
 import org.keycloak.http.HttpRequest;
 import org.keycloak.models.KeycloakSession;
-import org.keycloak.models.RealmModel;
 import org.keycloak.models.RoleModel;
 import org.keycloak.services.cors.Cors;
 import org.keycloak.services.util.CacheControlUtil;
 
 import java.security.interfaces.ECPrivateKey;
-import java.util.Optional;
 
 public class SharedKeyApiProvider extends AlternateApiProvider {
     private static final Logger LOGGER = Logger.getLogger(SharedKeyApiProvider.class);
@@ -30,11 +30,11 @@ public class SharedKeyApiProvider extends AlternateApiProvider {
     private static final String UNAUTHORIZED_ERROR_MESSAGE = "You're not authorized to access this resources";
     private static final String ADMIN_ROLE = "admin";
 
-    private final RealmModel masterRealm;
+    private final String masterRealmId;
 
-    public SharedKeyApiProvider(RealmModel masterRealm) {
+    public SharedKeyApiProvider(String masterRealmId) {
         super();
-        this.masterRealm = masterRealm;
+        this.masterRealmId = masterRealmId;
     }
 
     /**
@@ -124,22 +124,44 @@ public class SharedKeyApiProvider extends AlternateApiProvider {
     }
 
     /**
-     * Only allow user have `admin` role and should be member of `master` realm
+     * Only allow user have `admin` role and should be member of `master` realm. The decision
+     * is cached per token (see {@link AuthorizationDecisionCache}).
      *
      * @param keycloakSession Keycloak session object
      * @param userPayloadDto  Current user information extracted from bearer token
      */
     void validateAllowedUser(KeycloakSession keycloakSession, UserPayloadDto userPayloadDto) {
-        var isAllowed = Optional
-                .of(keycloakSession.users().getUserByUsername(masterRealm, userPayloadDto.getPreferred_username()))
-                .orElseThrow(() -> new ForbiddenException(UNAUTHORIZED_ERROR_MESSAGE))
-                .getRoleMappingsStream()
-                .map(RoleModel::getName)
-                .anyMatch(ADMIN_ROLE::equalsIgnoreCase);
-        if (!isAllowed) {
-            throw new NotAuthorizedException(UNAUTHORIZED_ERROR_MESSAGE);
+        var realmId = keycloakSession.getContext().getRealm().getId();
+        var username = userPayloadDto.getPreferred_username();
+        var cache = AuthorizationDecisionCache.getInstance();
+        var decision = cache.get(realmId, username, userPayloadDto.getIat());
+        if (decision == null) {
+            decision = decide(keycloakSession, username);
+            cache.put(realmId, username, userPayloadDto.getIat(), decision);
+        }
+
+        switch (decision) {
+            case UNKNOWN_USER -> throw new ForbiddenException(UNAUTHORIZED_ERROR_MESSAGE);
+            case NOT_ADMIN -> throw new NotAuthorizedException(UNAUTHORIZED_ERROR_MESSAGE);
+            default -> {
+                // allowed
+            }
         }
-        ;
+    }
+
+    private Decision decide(KeycloakSession keycloakSession, String username) {
+        var masterRealm = keycloakSession.realms().getRealm(masterRealmId);
+        var user = masterRealm != null && username != null
+                ? keycloakSession.users().getUserByUsername(masterRealm, username)
+                : null;
+        if (user == null) {
+            return Decision.UNKNOWN_USER;
+        }
+        return user.getRoleMappingsStream()
+                .map(RoleModel::getName)
+                .anyMatch(ADMIN_ROLE::equalsIgnoreCase)
+                ? Decision.ALLOWED
+                : Decision.NOT_ADMIN;
     }
 
     Response sendResponse(HttpRequest httpRequest, Response.ResponseBuilder responseBuilder) {
@@ -1,20 +1,55 @@
 package com.example.resources;
 
+import org.jboss.logging.Logger;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.models.utils.PostMigrationEvent;
 import org.keycloak.services.managers.RealmManager;
 import org.keycloak.services.resource.RealmResourceProvider;
 
 public class SharedKeyApiProviderFactory extends AlternateApiProviderFactory {
+    private static final Logger logger = Logger.getLogger(SharedKeyApiProviderFactory.class);
 
     public static final String ID = "shared-key";
+    static final String MASTER_REALM = "master";
+
+    private volatile String masterRealmId;
 
     @Override
     public RealmResourceProvider create(KeycloakSession keycloakSession) {
-        return new SharedKeyApiProvider(new RealmManager(keycloakSession).getRealmByName("master"));
+        var realmId = masterRealmId;
+        if (realmId == null) {
+            realmId = resolveMasterRealmId(keycloakSession);
+        }
+        return new SharedKeyApiProvider(realmId);
+    }
+
+    /**
+     * Resolve the master realm id once the model is migrated, instead of looking the realm up
+     * by name for every session.
+     */
+    @Override
+    public void postInit(KeycloakSessionFactory factory) {
+        factory.register(event -> {
+            if (event instanceof PostMigrationEvent) {
+                KeycloakModelUtils.runJobInTransaction(factory, this::resolveMasterRealmId);
+            }
+        });
+    }
+
+    private String resolveMasterRealmId(KeycloakSession keycloakSession) {
+        var realm = new RealmManager(keycloakSession).getRealmByName(MASTER_REALM);
+        if (realm == null) {
+            logger.warnf("[resolveMasterRealmId] Realm %s not found", MASTER_REALM);
+            return null;
+        }
+        masterRealmId = realm.getId();
+        return masterRealmId;
     }
 
     @Override
     public String getId() {
         return ID;
     }
-}
\ No newline at end of file
+}
@@ -50,11 +50,7 @@ public class UserInfoAlternativeApiProvider extends AlternateApiProvider {
             event.error(Errors.INVALID_TOKEN);
             return Response.status(400).entity(new ErrorResponse("Authorization not found in the header")).build();
         }
-        var accessToken = authorizationHeaders.replace("Bearer", "").trim();
-        var encodedPayload = accessToken.split("\\.")[1];
-
-        var payload = new String(Base64.getUrlDecoder().decode(encodedPayload));
-        var userPayloadDto = objectMapper.readValue(payload, UserPayloadDto.class);
+        var userPayloadDto = parseAuthorizationToken(authorizationHeaders);
         event.detail(Details.USERNAME, userPayloadDto.getSub());
 
         if (Time.currentTime() > userPayloadDto.getExp()) {
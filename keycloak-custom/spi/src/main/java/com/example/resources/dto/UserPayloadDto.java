@@ -5,6 +5,7 @@ public class UserPayloadDto {
     private String sub;
     private String iss;
     private long exp;
+    private long iat;
     private String preferred_username;
 
     public String getSub() {
@@ -31,6 +32,14 @@ public class UserPayloadDto {
         this.exp = exp;
     }
 
+    public long getIat() {
+        return iat;
+    }
+
+    public void setIat(long iat) {
+        this.iat = iat;
+    }
+
     public String getPreferred_username() {
         return preferred_username;
     }
@@ -0,0 +1,106 @@
+package com.example.utils;
+
+import com.example.config.CustomOIDCIdentityProviderConfig;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which brokered claims are copied to user attributes. Include and exclude lists are
+ * comma separated globs where {@code *} matches any run of characters and {@code ?} a single
+ * one, e.g. {@code uinfin.*,id_token.entityInfo.*}. A claim is kept when it matches an include
+ * glob (all claims when the list is blank) and no exclude glob.
+ * <p>
+ * The raw tokens of the token response ({@link #DEFAULT_EXCLUDES}) are always dropped in
+ * addition to the configured excludes, since they change on every login and are available to
+ * the broker through the stored token anyway, unless the IdP explicitly opts into keeping them.
+ * Globs are compiled once per pattern text.
+ */
+public final class AttributeProjection {
+    static final String DEFAULT_EXCLUDES = "access_token.token,access_token.id_token,access_token.refresh_token";
+    static final int MAX_PROJECTIONS = 64;
+
+    private static final ConcurrentMap<Source, AttributeProjection> PROJECTIONS = new ConcurrentHashMap<>();
+
+    private final Pattern include;
+    private final Pattern exclude;
+
+    private AttributeProjection(Pattern include, Pattern exclude) {
+        this.include = include;
+        this.exclude = exclude;
+    }
+
+    public static AttributeProjection forConfig(CustomOIDCIdentityProviderConfig config) {
+        var source = new Source(config.getAttributeIncludePatterns(), config.getAttributeExcludePatterns(),
+                config.isKeepRawTokenAttributesFlag());
+        var projection = PROJECTIONS.get(source);
+        if (projection == null) {
+            projection = compile(source.includes(), source.excludes(), source.keepRawTokens());
+            if (PROJECTIONS.size() >= MAX_PROJECTIONS) {
+                PROJECTIONS.clear();
+            }
+            PROJECTIONS.put(source, projection);
+        }
+        return projection;
+    }
+
+    /**
+     * Compile the glob lists, excluding the raw tokens as well.
+     */
+    public static AttributeProjection compile(String includes, String excludes) {
+        return compile(includes, excludes, false);
+    }
+
+    /**
+     * Compile the glob lists. Unless {@code keepRawTokens} is set, {@link #DEFAULT_EXCLUDES}
+     * is added to the exclude list.
+     */
+    public static AttributeProjection compile(String includes, String excludes, boolean keepRawTokens) {
+        if (!keepRawTokens) {
+            excludes = excludes == null || excludes.isBlank() ? DEFAULT_EXCLUDES : DEFAULT_EXCLUDES + "," + excludes;
+        }
+        return new AttributeProjection(toPattern(includes), toPattern(excludes));
+    }
+
+    public boolean test(String attributeName) {
+        return (include == null || include.matcher(attributeName).matches())
+                && (exclude == null || !exclude.matcher(attributeName).matches());
+    }
+
+    static Pattern toPattern(String globs) {
+        if (globs == null || globs.isBlank()) {
+            return null;
+        }
+        var regex = new StringBuilder();
+        for (var glob : globs.split(",")) {
+            glob = glob.trim();
+            if (glob.isEmpty()) {
+                continue;
+            }
+            if (!regex.isEmpty()) {
+                regex.append('|');
+            }
+            var literal = new StringBuilder();
+            for (var i = 0; i < glob.length(); i++) {
+                var c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (!literal.isEmpty()) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (!literal.isEmpty()) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+        }
+        return regex.isEmpty() ? null : Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    record Source(String includes, String excludes, boolean keepRawTokens) {
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.utils;
+
+import org.jboss.logging.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Short-lived cache of authorization decisions for the admin-gated custom REST resources,
+ * keyed by realm, username and the {@code iat} of the bearer token, so repeated calls with
+ * the same token skip the user lookup and role-mapping scan.
+ * <p>
+ * Entries live for {@link #TTL_MILLIS}; role-mapping and user admin events drop every entry
+ * (see {@link #invalidateAll()}), which bounds how long a revoked role keeps being honoured
+ * on this node.
+ */
+public class AuthorizationDecisionCache {
+    private static final Logger logger = Logger.getLogger(AuthorizationDecisionCache.class);
+
+    static final int MAX_ENTRIES = 1024;
+    static final long TTL_MILLIS = 30_000;
+
+    private static final AuthorizationDecisionCache INSTANCE = new AuthorizationDecisionCache(MAX_ENTRIES, System::currentTimeMillis);
+
+    private final Map<String, Entry> entries;
+    private final LongSupplier clock;
+
+    AuthorizationDecisionCache(int maxEntries, LongSupplier clock) {
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static AuthorizationDecisionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Cached decision, or {@code null} when absent or expired.
+     */
+    public Decision get(String realmId, String username, long iat) {
+        var cacheKey = cacheKey(realmId, username, iat);
+        synchronized (entries) {
+            var entry = entries.get(cacheKey);
+            if (entry == null) {
+                return null;
+            }
+            if (clock.getAsLong() >= entry.expiresAt()) {
+                entries.remove(cacheKey);
+                return null;
+            }
+            return entry.decision();
+        }
+    }
+
+    /**
+     * Cache {@code decision}. Tokens without {@code iat} are not cached.
+     */
+    public void put(String realmId, String username, long iat, Decision decision) {
+        if (iat <= 0 || username == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(cacheKey(realmId, username, iat), new Entry(decision, clock.getAsLong() + TTL_MILLIS));
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            if (!entries.isEmpty()) {
+                logger.infof("[invalidateAll] Dropping %d authorization decisions", entries.size());
+                entries.clear();
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    static String cacheKey(String realmId, String username, long iat) {
+        return realmId + "|" + username + "|" + iat;
+    }
+
+    public enum Decision {
+        ALLOWED, NOT_ADMIN, UNKNOWN_USER
+    }
+
+    record Entry(Decision decision, long expiresAt) {
+    }
+}
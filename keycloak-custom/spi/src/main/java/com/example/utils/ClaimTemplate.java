@@ -0,0 +1,276 @@
+package com.example.utils;
+
+import com.example.config.CustomOIDCIdentityProviderConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.jboss.logging.Logger;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.util.JsonSerialization;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compiled form of an IdP's {@code claimExtractionTemplate} and
+ * {@code claimExtractionToAttributeTemplate}.
+ * <p>
+ * Both templates are lists of {@code target=path} entries separated by commas or new lines.
+ * A path is a JSON pointer ({@code /uinfin/value}) or a dotted path ({@code uinfin.value},
+ * {@code vehicles[0].make.value}) and reads from the userinfo response unless it is prefixed
+ * with {@code id_token:}, in which case it reads the ID token as serialized, so registered
+ * claims such as {@code exp}, {@code aud} or {@code nonce} resolve like any other. Targets
+ * of the claim extraction template are the identity fields {@value #USERNAME},
+ * {@value #EMAIL}, {@value #NAME}, {@value #FIRST_NAME} and {@value #LAST_NAME}; targets of
+ * the attribute template are user attribute names.
+ * <p>
+ * All paths of one source are merged into a trie, so a login walks each source once and only
+ * along the configured claims. Programs are cached by template text, which makes every config
+ * change a new version. Without a claim extraction template the MyInfo layout in
+ * {@link #DEFAULT_CLAIM_TEMPLATE} is used.
+ */
+public final class ClaimTemplate {
+    private static final Logger logger = Logger.getLogger(ClaimTemplate.class);
+
+    public static final String USERNAME = "username";
+    public static final String EMAIL = "email";
+    public static final String NAME = "name";
+    public static final String FIRST_NAME = "firstName";
+    public static final String LAST_NAME = "lastName";
+
+    static final String DEFAULT_CLAIM_TEMPLATE =
+            "username=uinfin.value,email=email.value,name=name.value,firstName=name.value,lastName=aliasname.value";
+    static final String ID_TOKEN_PREFIX = "id_token:";
+    static final String USERINFO_PREFIX = "userinfo:";
+    static final int MAX_PROGRAMS = 64;
+
+    private static final Set<String> IDENTITY_TARGETS = Set.of(USERNAME, EMAIL, NAME, FIRST_NAME, LAST_NAME);
+    private static final ConcurrentMap<Source, ClaimTemplate> PROGRAMS = new ConcurrentHashMap<>();
+
+    private final Step userInfo;
+    private final Step idToken;
+    private final boolean attributeTemplate;
+
+    private ClaimTemplate(Step userInfo, Step idToken, boolean attributeTemplate) {
+        this.userInfo = userInfo;
+        this.idToken = idToken;
+        this.attributeTemplate = attributeTemplate;
+    }
+
+    /**
+     * Program for the templates of {@code config}. An invalid template is logged and the
+     * default program is used instead.
+     */
+    public static ClaimTemplate forConfig(CustomOIDCIdentityProviderConfig config) {
+        var source = new Source(config.getClaimExtractionTemplate(), config.getClaimExtractionToAttributeTemplate());
+        var program = PROGRAMS.get(source);
+        if (program != null) {
+            return program;
+        }
+        try {
+            program = compile(source.claimTemplate(), source.attributeTemplate());
+        } catch (IllegalArgumentException e) {
+            logger.errorf("[forConfig] Invalid claim template for %s, using default: %s", config.getAlias(), e.getMessage());
+            program = compile(null, null);
+        }
+        if (PROGRAMS.size() >= MAX_PROGRAMS) {
+            PROGRAMS.clear();
+        }
+        PROGRAMS.put(source, program);
+        return program;
+    }
+
+    /**
+     * Compile the templates, throwing {@link IllegalArgumentException} on a malformed entry.
+     */
+    public static ClaimTemplate compile(String claimTemplate, String attributeTemplate) {
+        var userInfo = new Step();
+        var idToken = new Step();
+        var claims = isBlank(claimTemplate) ? DEFAULT_CLAIM_TEMPLATE : claimTemplate;
+        for (var entry : entries(claims)) {
+            if (!IDENTITY_TARGETS.contains(entry.target())) {
+                throw new IllegalArgumentException("unknown identity field '" + entry.target()
+                        + "', expected one of " + IDENTITY_TARGETS);
+            }
+            add(userInfo, idToken, entry, true);
+        }
+        for (var entry : entries(attributeTemplate)) {
+            add(userInfo, idToken, entry, false);
+        }
+        return new ClaimTemplate(userInfo, idToken, !isBlank(attributeTemplate));
+    }
+
+    /**
+     * Whether an attribute template is configured. Without one every userinfo claim is
+     * copied to the user attributes.
+     */
+    public boolean hasAttributeTemplate() {
+        return attributeTemplate;
+    }
+
+    /**
+     * Evaluate against the userinfo response and the ID token, either of which may be
+     * {@code null}. Claims that are absent or JSON {@code null} are left out of the result.
+     */
+    public Result evaluate(JsonNode userInfoNode, JsonWebToken token) {
+        var result = new Result(new HashMap<>(), new LinkedHashMap<>());
+        if (userInfoNode != null) {
+            for (var child : userInfo.children.entrySet()) {
+                walk(child.getValue(), child(userInfoNode, child.getKey()), result);
+            }
+        }
+        if (token != null && !idToken.children.isEmpty()) {
+            // typed claims (exp, aud, nonce, auth_time, ...) and other claims alike, by their JSON names
+            JsonNode tokenNode = JsonSerialization.mapper.valueToTree(token);
+            for (var child : idToken.children.entrySet()) {
+                walk(child.getValue(), child(tokenNode, child.getKey()), result);
+            }
+        }
+        return result;
+    }
+
+    private static void walk(Step step, JsonNode value, Result result) {
+        if (value == null || value.isMissingNode() || value.isNull()) {
+            return;
+        }
+        if (!step.outputs.isEmpty()) {
+            var text = text(value);
+            for (var output : step.outputs) {
+                (output.identity() ? result.identity() : result.attributes()).putIfAbsent(output.name(), text);
+            }
+        }
+        for (var child : step.children.entrySet()) {
+            walk(child.getValue(), child(value, child.getKey()), result);
+        }
+    }
+
+    private static JsonNode child(JsonNode node, String segment) {
+        if (node.isArray()) {
+            var index = index(segment);
+            return index < 0 ? null : node.get(index);
+        }
+        return node.get(segment);
+    }
+
+    private static String text(JsonNode node) {
+        return node.isValueNode() ? node.asText() : node.toString();
+    }
+
+    private static int index(String segment) {
+        if (segment.isEmpty() || segment.length() > 9) {
+            return -1;
+        }
+        for (var i = 0; i < segment.length(); i++) {
+            if (!Character.isDigit(segment.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(segment);
+    }
+
+    private static void add(Step userInfo, Step idToken, Entry entry, boolean identity) {
+        var path = entry.path();
+        var root = userInfo;
+        if (path.startsWith(ID_TOKEN_PREFIX)) {
+            root = idToken;
+            path = path.substring(ID_TOKEN_PREFIX.length());
+        } else if (path.startsWith(USERINFO_PREFIX)) {
+            path = path.substring(USERINFO_PREFIX.length());
+        }
+
+        var step = root;
+        for (var segment : segments(path)) {
+            step = step.children.computeIfAbsent(segment, s -> new Step());
+        }
+        step.outputs.add(new Output(entry.target(), identity));
+    }
+
+    static List<String> segments(String path) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("empty claim path");
+        }
+        var segments = new ArrayList<String>();
+        if (path.charAt(0) == '/') {
+            // JSON pointer, RFC 6901
+            for (var token : path.substring(1).split("/", -1)) {
+                segments.add(token.replace("~1", "/").replace("~0", "~"));
+            }
+            return segments;
+        }
+
+        var current = new StringBuilder();
+        for (var i = 0; i < path.length(); i++) {
+            var c = path.charAt(i);
+            if (c == '.' || c == '[') {
+                if (!current.isEmpty()) {
+                    segments.add(current.toString());
+                    current.setLength(0);
+                } else if (c == '.' && (i == 0 || path.charAt(i - 1) != ']')) {
+                    throw new IllegalArgumentException("empty segment in claim path '" + path + "'");
+                }
+                if (c == '[') {
+                    var end = path.indexOf(']', i);
+                    if (end < 0 || index(path.substring(i + 1, end)) < 0) {
+                        throw new IllegalArgumentException("invalid array index in claim path '" + path + "'");
+                    }
+                    segments.add(path.substring(i + 1, end));
+                    i = end;
+                }
+            } else {
+                current.append(c);
+            }
+        }
+        if (!current.isEmpty()) {
+            segments.add(current.toString());
+        } else if (path.charAt(path.length() - 1) == '.') {
+            throw new IllegalArgumentException("empty segment in claim path '" + path + "'");
+        }
+        return segments;
+    }
+
+    private static List<Entry> entries(String template) {
+        if (isBlank(template)) {
+            return List.of();
+        }
+        var entries = new ArrayList<Entry>();
+        for (var line : template.split("[,\\r\\n]+")) {
+            if (line.isBlank()) {
+                continue;
+            }
+            var separator = line.indexOf('=');
+            if (separator <= 0 || separator == line.length() - 1) {
+                throw new IllegalArgumentException("expected target=path but got '" + line.trim() + "'");
+            }
+            entries.add(new Entry(line.substring(0, separator).trim(), line.substring(separator + 1).trim()));
+        }
+        return entries;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Extracted identity fields, keyed by the constants of this class, and user attributes.
+     */
+    public record Result(Map<String, String> identity, Map<String, String> attributes) {
+    }
+
+    record Source(String claimTemplate, String attributeTemplate) {
+    }
+
+    private record Entry(String target, String path) {
+    }
+
+    private record Output(String name, boolean identity) {
+    }
+
+    private static final class Step {
+        private final Map<String, Step> children = new LinkedHashMap<>();
+        private final List<Output> outputs = new ArrayList<>(1);
+    }
+}
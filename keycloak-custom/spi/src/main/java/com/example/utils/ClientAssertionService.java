@@ -0,0 +1,183 @@
+package com.example.utils;
+
+import com.example.config.CustomOIDCIdentityProviderConfig;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import org.jboss.logging.Logger;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.KeycloakSession;
+
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Builds {@code private_key_jwt} client assertions with a signer created once. The JOSE
+ * header and the static claims ({@code iss}, {@code sub}, {@code aud}) are serialised when the
+ * service is created; each assertion only serialises {@code iat}, {@code exp} and
+ * {@code jti}.
+ * <p>
+ * {@link #forIdp} keeps one service per identity provider, resolving the configured signing
+ * key by kid once. The service is rebuilt when the IdP settings it depends on change, when a
+ * key component of the realm changes (see {@link #invalidate(String)}) and after
+ * {@link #MAX_AGE_MILLIS}, which covers key rotations made on another node.
+ */
+public class ClientAssertionService {
+    private static final Logger logger = Logger.getLogger(ClientAssertionService.class);
+
+    static final long MAX_AGE_MILLIS = 60_000;
+    static final long IDP_ASSERTION_LIFETIME_SECONDS = 120;
+
+    private static final ConcurrentMap<String, ClientAssertionService> SERVICES = new ConcurrentHashMap<>();
+    private static final LongSupplier CLOCK = System::currentTimeMillis;
+
+    private final JWSHeader header;
+    private final String encodedHeader;
+    private final JWSSigner signer;
+    private final String staticClaims;
+    private final long lifetimeSeconds;
+    private final long clockOffsetSeconds;
+    private final Settings settings;
+    private final long builtAt;
+
+    ClientAssertionService(JWSHeader header,
+                           JWSSigner signer,
+                           Map<String, Object> staticClaims,
+                           long lifetimeSeconds,
+                           long clockOffsetSeconds) {
+        this(header, signer, staticClaims, lifetimeSeconds, clockOffsetSeconds, null, 0);
+    }
+
+    private ClientAssertionService(JWSHeader header,
+                                   JWSSigner signer,
+                                   Map<String, Object> staticClaims,
+                                   long lifetimeSeconds,
+                                   long clockOffsetSeconds,
+                                   Settings settings,
+                                   long builtAt) {
+        this.header = header;
+        this.encodedHeader = header.toBase64URL().toString();
+        this.signer = signer;
+        var json = JSONObjectUtils.toJSONString(staticClaims);
+        this.staticClaims = json.substring(0, json.length() - 1) + (staticClaims.isEmpty() ? "" : ",");
+        this.lifetimeSeconds = lifetimeSeconds;
+        this.clockOffsetSeconds = clockOffsetSeconds;
+        this.settings = settings;
+        this.builtAt = builtAt;
+    }
+
+    /**
+     * Service for the IdP, or {@code null} when the realm has no key with the configured
+     * {@code signingKeyId}.
+     */
+    public static ClientAssertionService forIdp(KeycloakSession session, CustomOIDCIdentityProviderConfig config) {
+        var realm = session.getContext().getRealm();
+        var cacheKey = realm.getId() + "|" + config.getAlias();
+        var settings = Settings.of(config);
+        var service = SERVICES.get(cacheKey);
+        if (service != null && service.settings.equals(settings) && CLOCK.getAsLong() - service.builtAt < MAX_AGE_MILLIS) {
+            return service;
+        }
+
+        var key = session.keys().getKeysStream(realm)
+                .filter(k -> k.getKid() != null && k.getKid().equalsIgnoreCase(settings.signingKeyId()))
+                .findFirst()
+                .orElse(null);
+        if (key == null) {
+            SERVICES.remove(cacheKey);
+            return null;
+        }
+
+        try {
+            service = create(key, settings);
+        } catch (JOSEException e) {
+            logger.errorf(e, "[forIdp] Unable to create signer for key %s: %s", key.getKid(), e.getMessage());
+            return null;
+        }
+        SERVICES.put(cacheKey, service);
+        logger.infof("[forIdp] Client assertions for %s are signed with kid=%s alg=%s",
+                config.getAlias(), key.getKid(), service.header.getAlgorithm());
+        return service;
+    }
+
+    public static void invalidate(String realmId) {
+        if (realmId != null) {
+            SERVICES.keySet().removeIf(cacheKey -> cacheKey.startsWith(realmId + "|"));
+        }
+    }
+
+    private static ClientAssertionService create(KeyWrapper key, Settings settings) throws JOSEException {
+        var header = new JWSHeader.Builder(JWSAlgorithm.parse(key.getAlgorithm()))
+                .type(JOSEObjectType.JWT)
+                .keyID(key.getKid())
+                .build();
+        var claims = new LinkedHashMap<String, Object>();
+        claims.put("sub", settings.clientId());
+        claims.put("iss", settings.clientId());
+        claims.put("aud", settings.audience());
+        claims.values().removeIf(Objects::isNull);
+        var clockOffset = isNull(settings.clockOffset()) ? 0 : Integer.parseInt(settings.clockOffset());
+        return new ClientAssertionService(header, signer(key.getPrivateKey()), claims,
+                IDP_ASSERTION_LIFETIME_SECONDS, clockOffset, settings, CLOCK.getAsLong());
+    }
+
+    static JWSSigner signer(Object privateKey) throws JOSEException {
+        if (privateKey instanceof ECPrivateKey ecPrivateKey) {
+            return new ECDSASigner(ecPrivateKey);
+        }
+        if (privateKey instanceof RSAPrivateKey rsaPrivateKey) {
+            return new RSASSASigner(rsaPrivateKey);
+        }
+        throw new JOSEException("unsupported signing key type: "
+                + (privateKey instanceof PrivateKey key ? key.getAlgorithm() : privateKey));
+    }
+
+    public String getKeyId() {
+        return header.getKeyID();
+    }
+
+    /**
+     * A new signed assertion issued now.
+     */
+    public String sign() throws JOSEException {
+        return sign(CLOCK.getAsLong() / 1000);
+    }
+
+    String sign(long nowSeconds) throws JOSEException {
+        var iat = nowSeconds + clockOffsetSeconds;
+        var payload = staticClaims
+                + "\"iat\":" + iat
+                + ",\"exp\":" + (iat + lifetimeSeconds)
+                + ",\"jti\":\"" + UUID.randomUUID() + "\"}";
+        var signingInput = encodedHeader + "." + Base64URL.encode(payload.getBytes(StandardCharsets.UTF_8));
+        var signature = signer.sign(header, signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + signature;
+    }
+
+    /**
+     * The IdP settings a service is built from; a change to any of them rebuilds it.
+     */
+    record Settings(String signingKeyId, String clientId, String audience, String clockOffset) {
+        static Settings of(CustomOIDCIdentityProviderConfig config) {
+            return new Settings(config.getSigningKeyId(), config.getClientId(), config.getIssuer(),
+                    config.getIdpDifferentTimes());
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tokenizer for JOSE compact serialization shared by all token-handling code. Segment
+ * boundaries are found with a single index scan over the string, so classifying a token as
+ * JWS or JWE allocates nothing, and segments are base64url-decoded straight into a caller or
+ * per-thread buffer instead of going through {@code String.split} and {@link java.util.Base64}.
+ * <p>
+ * A token is only classified as JWS (three segments) or JWE (five segments) when every
+ * character is in the base64url alphabet and the protected header is not empty, so JSON bodies
+ * or opaque tokens that happen to contain dots are reported as {@link Type#INVALID}. Tokens
+ * longer than {@link #MAX_LENGTH} are rejected before they are scanned.
+ */
+public final class CompactJose {
+    public static final int MAX_LENGTH = 256 * 1024;
+
+    private static final int MAX_SEGMENTS = 5;
+    private static final int BUFFER_SIZE = 4 * 1024;
+    private static final String BEARER = "Bearer";
+
+    private static final byte[] DECODE = new byte[128];
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    static {
+        Arrays.fill(DECODE, (byte) -1);
+        var alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (var i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    public enum Type {
+        JWS, JWE, INVALID
+    }
+
+    private final String token;
+    private final Type type;
+    private final int[] bounds;
+
+    private CompactJose(String token, Type type, int[] bounds) {
+        this.token = token;
+        this.type = type;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Classify {@code token} without allocating. Leading and trailing whitespace, such as the
+     * newline ending an {@code application/jwt} response body, is ignored.
+     */
+    public static Type classify(String token) {
+        if (token == null) {
+            return Type.INVALID;
+        }
+        var from = skipWhitespace(token, 0, token.length());
+        return classify(token, from, trimWhitespace(token, from, token.length()));
+    }
+
+    private static Type classify(String token, int from, int to) {
+        if (to <= from || to - from > MAX_LENGTH) {
+            return Type.INVALID;
+        }
+        var dots = 0;
+        var firstDot = -1;
+        for (var i = from; i < to; i++) {
+            var c = token.charAt(i);
+            if (c == '.') {
+                if (++dots > MAX_SEGMENTS - 1) {
+                    return Type.INVALID;
+                }
+                if (firstDot < 0) {
+                    firstDot = i;
+                }
+            } else if (c >= 128 || DECODE[c] < 0) {
+                return Type.INVALID;
+            }
+        }
+        if (firstDot == from) {
+            return Type.INVALID;
+        }
+        return switch (dots) {
+            case 2 -> Type.JWS;
+            case 4 -> Type.JWE;
+            default -> Type.INVALID;
+        };
+    }
+
+    /**
+     * Tokenize a compact JWS or JWE, ignoring surrounding whitespace. Throws
+     * {@link IllegalArgumentException} when {@code token} is neither.
+     */
+    public static CompactJose parse(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("not a compact JWS or JWE");
+        }
+        var from = skipWhitespace(token, 0, token.length());
+        return parse(token, from, trimWhitespace(token, from, token.length()));
+    }
+
+    private static CompactJose parse(String token, int from, int to) {
+        var type = classify(token, from, to);
+        if (type == Type.INVALID) {
+            throw new IllegalArgumentException("not a compact JWS or JWE");
+        }
+        var segments = type == Type.JWS ? 3 : 5;
+        var bounds = new int[segments + 1];
+        bounds[0] = from - 1;
+        var next = 1;
+        for (var i = from; i < to; i++) {
+            if (token.charAt(i) == '.') {
+                bounds[next++] = i;
+            }
+        }
+        bounds[segments] = to;
+        return new CompactJose(token, type, bounds);
+    }
+
+    /**
+     * Tokenize the credentials of an {@code Authorization: Bearer} header. The scheme is
+     * optional and matched case-insensitively.
+     */
+    public static CompactJose parseBearer(String authorizationHeader) {
+        if (authorizationHeader == null) {
+            throw new IllegalArgumentException("not a compact JWS or JWE");
+        }
+        var start = 0;
+        var end = authorizationHeader.length();
+        if (authorizationHeader.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            start = BEARER.length();
+        }
+        start = skipWhitespace(authorizationHeader, start, end);
+        return parse(authorizationHeader, start, trimWhitespace(authorizationHeader, start, end));
+    }
+
+    private static int skipWhitespace(String value, int from, int to) {
+        while (from < to && Character.isWhitespace(value.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimWhitespace(String value, int from, int to) {
+        while (to > from && Character.isWhitespace(value.charAt(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The compact token without any {@code Bearer} prefix or surrounding whitespace.
+     */
+    public String getToken() {
+        var from = bounds[0] + 1;
+        var to = bounds[bounds.length - 1];
+        return from == 0 && to == token.length() ? token : token.substring(from, to);
+    }
+
+    public int segmentCount() {
+        return bounds.length - 1;
+    }
+
+    public String segment(int index) {
+        return token.substring(bounds[index] + 1, bounds[index + 1]);
+    }
+
+    /**
+     * Upper bound of the decoded length of segment {@code index}.
+     */
+    public int decodedLength(int index) {
+        var length = bounds[index + 1] - bounds[index] - 1;
+        return length / 4 * 3 + Math.max(0, length % 4 - 1);
+    }
+
+    /**
+     * Decode segment {@code index} into {@code buffer} starting at offset 0 and return the
+     * number of bytes written.
+     */
+    public int decode(int index, byte[] buffer) {
+        if (buffer.length < decodedLength(index)) {
+            throw new IllegalArgumentException("buffer too small for segment " + index);
+        }
+        var from = bounds[index] + 1;
+        var to = bounds[index + 1];
+        if ((to - from) % 4 == 1) {
+            throw new IllegalArgumentException("invalid base64url length in segment " + index);
+        }
+        var out = 0;
+        var bits = 0;
+        var pending = 0;
+        for (var i = from; i < to; i++) {
+            bits = bits << 6 | DECODE[token.charAt(i)];
+            pending += 6;
+            if (pending >= 8) {
+                pending -= 8;
+                buffer[out++] = (byte) (bits >> pending);
+            }
+        }
+        return out;
+    }
+
+    public byte[] decode(int index) {
+        var buffer = new byte[decodedLength(index)];
+        var length = decode(index, buffer);
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Deserialise the JSON in segment {@code index} (e.g. the JWS payload) with {@code mapper},
+     * decoding through a per-thread buffer so no intermediate string or byte array is created
+     * for segments up to a few kilobytes.
+     */
+    public <T> T read(int index, ObjectMapper mapper, Class<T> type) throws IOException {
+        var needed = decodedLength(index);
+        var buffer = BUFFER.get();
+        if (buffer.length < needed) {
+            buffer = new byte[needed];
+        }
+        var length = decode(index, buffer);
+        return mapper.readValue(buffer, 0, length, type);
+    }
+
+    /**
+     * Deserialise the payload of a compact JWS.
+     */
+    public <T> T readPayload(ObjectMapper mapper, Class<T> type) throws IOException {
+        if (this.type != Type.JWS) {
+            throw new IllegalArgumentException("payload of a JWE is encrypted");
+        }
+        return read(1, mapper, type);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.utils;
+
+import org.jboss.logging.Logger;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Per-realm index of the realm's enabled ENC keys, keyed by kid and by algorithm, so that
+ * decrypting a JWE does not stream and filter every key of every provider.
+ * <p>
+ * The kid index holds active and passive keys, so tokens encrypted to a key that was just
+ * rotated out still decrypt; the algorithm index holds active keys only, first by provider
+ * priority. The candidate lists hold every enabled key per algorithm, active keys first, for
+ * trying keys in order when a JWE has no kid. The index is dropped when a key component is created, updated or removed (see
+ * {@link #invalidate(String)}) and is rebuilt after {@link #MAX_AGE_MILLIS} regardless, which
+ * covers changes made on another node or through built-in providers. An unknown kid triggers
+ * at most one rebuild per {@link #MISS_REBUILD_INTERVAL_MILLIS}.
+ */
+public class DecryptionKeyIndex {
+    private static final Logger logger = Logger.getLogger(DecryptionKeyIndex.class);
+
+    static final long MAX_AGE_MILLIS = 60_000;
+    static final long MISS_REBUILD_INTERVAL_MILLIS = 5_000;
+
+    private static final DecryptionKeyIndex INSTANCE = new DecryptionKeyIndex(System::currentTimeMillis);
+
+    private final ConcurrentMap<String, Index> indexes = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    DecryptionKeyIndex(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static DecryptionKeyIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Enabled ENC key with the given kid, or {@code null}.
+     */
+    public KeyWrapper getByKid(KeycloakSession session, RealmModel realm, String kid) {
+        var index = get(session, realm);
+        var key = index.byKid().get(kid);
+        if (key == null && clock.getAsLong() - index.builtAt() >= MISS_REBUILD_INTERVAL_MILLIS) {
+            logger.infof("[getByKid] kid %s is not indexed for realm %s, rebuilding", kid, realm.getName());
+            key = rebuild(session, realm).byKid().get(kid);
+        }
+        return key;
+    }
+
+    /**
+     * Highest priority active ENC key for the given JWE algorithm, or {@code null}.
+     */
+    public KeyWrapper getActiveByAlgorithm(KeycloakSession session, RealmModel realm, String algorithm) {
+        return get(session, realm).byAlgorithm().get(normalize(algorithm));
+    }
+
+    /**
+     * Enabled ENC keys for the given JWE algorithm, active keys first, each group in provider
+     * priority order.
+     */
+    public List<KeyWrapper> getCandidatesByAlgorithm(KeycloakSession session, RealmModel realm, String algorithm) {
+        return get(session, realm).candidates().getOrDefault(normalize(algorithm), List.of());
+    }
+
+    public void invalidate(String realmId) {
+        if (realmId != null && indexes.remove(realmId) != null) {
+            logger.infof("[invalidate] Dropped decryption key index for realm %s", realmId);
+        }
+    }
+
+    private Index get(KeycloakSession session, RealmModel realm) {
+        var index = indexes.get(realm.getId());
+        if (index == null || clock.getAsLong() - index.builtAt() >= MAX_AGE_MILLIS) {
+            index = rebuild(session, realm);
+        }
+        return index;
+    }
+
+    private Index rebuild(KeycloakSession session, RealmModel realm) {
+        var index = Index.build(session.keys().getKeysStream(realm), clock.getAsLong());
+        indexes.put(realm.getId(), index);
+        logger.infof("[rebuild] Indexed %d ENC keys for realm %s, kids=%s algorithms=%s",
+                index.byKid().size(), realm.getName(), index.byKid().keySet(), index.byAlgorithm().keySet());
+        return index;
+    }
+
+    static String normalize(String algorithm) {
+        return algorithm == null ? null : algorithm.toUpperCase(Locale.ROOT);
+    }
+
+    record Index(Map<String, KeyWrapper> byKid,
+                 Map<String, KeyWrapper> byAlgorithm,
+                 Map<String, List<KeyWrapper>> candidates,
+                 long builtAt) {
+
+        /**
+         * Index the keys in provider priority order; the first key wins on duplicates.
+         */
+        static Index build(Stream<KeyWrapper> keys, long now) {
+            var byKid = new HashMap<String, KeyWrapper>();
+            var byAlgorithm = new HashMap<String, KeyWrapper>();
+            var active = new HashMap<String, List<KeyWrapper>>();
+            var passive = new HashMap<String, List<KeyWrapper>>();
+            keys.filter(key -> key.getUse() == KeyUse.ENC)
+                    .filter(key -> key.getStatus() != null && key.getStatus().isEnabled())
+                    .filter(key -> key.getPrivateKey() != null)
+                    .forEach(key -> {
+                        if (key.getKid() != null) {
+                            byKid.putIfAbsent(key.getKid(), key);
+                        }
+                        if (key.getAlgorithm() == null) {
+                            return;
+                        }
+                        var algorithm = normalize(key.getAlgorithm());
+                        if (key.getStatus().isActive()) {
+                            byAlgorithm.putIfAbsent(algorithm, key);
+                        }
+                        (key.getStatus().isActive() ? active : passive)
+                                .computeIfAbsent(algorithm, a -> new ArrayList<>())
+                                .add(key);
+                    });
+            var candidates = new HashMap<String, List<KeyWrapper>>();
+            active.forEach((algorithm, group) -> candidates.computeIfAbsent(algorithm, a -> new ArrayList<>()).addAll(group));
+            passive.forEach((algorithm, group) -> candidates.computeIfAbsent(algorithm, a -> new ArrayList<>()).addAll(group));
+            candidates.replaceAll((algorithm, group) -> List.copyOf(group));
+            return new Index(Map.copyOf(byKid), Map.copyOf(byAlgorithm), Map.copyOf(candidates), now);
+        }
+    }
+}
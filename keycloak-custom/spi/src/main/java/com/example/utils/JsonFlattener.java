@@ -0,0 +1,109 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Flattens JSON into {@code (path, value)} pairs straight from a Jackson token stream, e.g.
+ * {@code {"name": {"value": "A"}, "aliases": ["B"]}} into {@code name.value=A} and
+ * {@code aliases[0]=B}. Paths are built in one reusable {@link StringBuilder} that is truncated
+ * back to the parent path when a level is left, and nesting is tracked with an explicit stack
+ * instead of recursion.
+ * <p>
+ * Values are the token text, so {@code null} becomes {@code "null"} and numbers keep their
+ * textual form, as {@link JsonNode#asText()} renders them. Empty objects and arrays produce no
+ * pairs.
+ */
+public final class JsonFlattener {
+    private static final int INITIAL_DEPTH = 16;
+
+    private JsonFlattener() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Flatten the value at the current (or next) token of {@code parser}, prefixing every path
+     * with {@code prefix}. Stops after that value, so a parser positioned inside a larger
+     * document is left at the value's last token.
+     */
+    public static void flatten(JsonParser parser, String prefix, BiConsumer<String, String> sink) throws IOException {
+        var token = parser.currentToken() != null ? parser.currentToken() : parser.nextToken();
+        if (token == null) {
+            return;
+        }
+
+        var path = new StringBuilder(64);
+        if (prefix != null) {
+            path.append(prefix);
+        }
+        // Per open container: path length at its start, and the next element index (-1 for objects)
+        var marks = new int[INITIAL_DEPTH];
+        var indexes = new int[INITIAL_DEPTH];
+        var depth = 0;
+
+        do {
+            switch (token) {
+                case FIELD_NAME -> {
+                    path.setLength(marks[depth - 1]);
+                    if (!path.isEmpty()) {
+                        path.append('.');
+                    }
+                    path.append(parser.currentName());
+                }
+                case START_OBJECT, START_ARRAY -> {
+                    enterValue(path, marks, indexes, depth);
+                    if (depth == marks.length) {
+                        marks = Arrays.copyOf(marks, depth * 2);
+                        indexes = Arrays.copyOf(indexes, depth * 2);
+                    }
+                    marks[depth] = path.length();
+                    indexes[depth] = token == JsonToken.START_ARRAY ? 0 : -1;
+                    depth++;
+                }
+                case END_OBJECT, END_ARRAY -> depth--;
+                default -> {
+                    enterValue(path, marks, indexes, depth);
+                    sink.accept(path.toString(), parser.getText());
+                }
+            }
+        } while (depth > 0 && (token = parser.nextToken()) != null);
+    }
+
+    /**
+     * Flatten {@code parser} into a map sized for {@code expectedSize} entries.
+     */
+    public static Map<String, String> flatten(JsonParser parser, int expectedSize) throws IOException {
+        var result = new HashMap<String, String>((int) (expectedSize / 0.75f) + 1);
+        flatten(parser, null, result::put);
+        return result;
+    }
+
+    /**
+     * Flatten an already parsed tree by streaming over it, without copying it.
+     */
+    public static Map<String, String> flatten(JsonNode node, int expectedSize) {
+        if (node == null) {
+            return new HashMap<>();
+        }
+        try (var parser = node.traverse()) {
+            return flatten(parser, expectedSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void enterValue(StringBuilder path, int[] marks, int[] indexes, int depth) {
+        if (depth > 0 && indexes[depth - 1] >= 0) {
+            path.setLength(marks[depth - 1]);
+            path.append('[').append(indexes[depth - 1]++).append(']');
+        }
+    }
+}
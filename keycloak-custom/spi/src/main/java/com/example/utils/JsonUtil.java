@@ -3,6 +3,8 @@ package com.example.utils;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.jboss.logging.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 import java.util.Optional;
 import java.util.regex.Pattern;
@@ -57,27 +59,19 @@ public class JsonUtil {
             }
     }
 
+    /**
+     * Flatten {@code jsonNode} into {@code resultMap}, see {@link JsonFlattener}.
+     */
     public static Map<String, String> flattenJsonNode(JsonNode jsonNode, String parentKey, Map<String, String> resultMap) {
         if (jsonNode == null) {
             return resultMap;
         }
 
-        if (jsonNode.isObject()) {
-            jsonNode.fields().forEachRemaining(entry -> {
-                var newKey = parentKey == null || parentKey.isEmpty()
-                        ? entry.getKey()
-                        : parentKey + "." + entry.getKey();
-                flattenJsonNode(entry.getValue(), newKey, resultMap);
-            });
-        } else if (jsonNode.isArray()) {
-            for (int i = 0; i < jsonNode.size(); i++) {
-                var newKey = parentKey + "[" + i + "]";
-                flattenJsonNode(jsonNode.get(i), newKey, resultMap);
-            }
-        } else {
-            resultMap.put(parentKey, jsonNode.asText());
+        try (var parser = jsonNode.traverse()) {
+            JsonFlattener.flatten(parser, parentKey, resultMap::put);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-
         return resultMap;
     }
 }
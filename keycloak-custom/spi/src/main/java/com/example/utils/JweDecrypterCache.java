@@ -0,0 +1,137 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWEDecrypter;
+import com.nimbusds.jose.crypto.ECDHDecrypter;
+import com.nimbusds.jose.crypto.RSADecrypter;
+import com.nimbusds.jose.jwk.JWK;
+import org.jboss.logging.Logger;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.security.PrivateKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of JWE decrypters keyed by key id, key provider and key version, so an
+ * ID token or userinfo response does not build a new {@link ECDHDecrypter} around the same
+ * private key for every login.
+ * <p>
+ * The version is a fingerprint of the private key material, so a provider that replaces a key
+ * under the same kid gets a fresh decrypter. Nimbus decrypters are thread-safe and are shared
+ * by all requests.
+ */
+public class JweDecrypterCache {
+    private static final Logger logger = Logger.getLogger(JweDecrypterCache.class);
+
+    static final int MAX_ENTRIES = 64;
+
+    private static final JweDecrypterCache INSTANCE = new JweDecrypterCache(MAX_ENTRIES);
+
+    private final Map<String, Entry> decrypters;
+
+    JweDecrypterCache(int maxEntries) {
+        this.decrypters = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static JweDecrypterCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Decrypter for a realm ENC key.
+     */
+    public JWEDecrypter get(KeyWrapper key) throws JOSEException {
+        if (!(key.getPrivateKey() instanceof PrivateKey privateKey)) {
+            throw new JOSEException("ENC key " + key.getKid() + " has no private key");
+        }
+        return get(key.getKid(), key.getProviderId(), privateKey);
+    }
+
+    /**
+     * Decrypter for a private JWK, keyed by its RFC 7638 thumbprint so the JWK is only
+     * converted to a {@link PrivateKey} once.
+     */
+    public JWEDecrypter get(JWK jwk) throws JOSEException {
+        var cacheKey = cacheKey(jwk.getKeyID(), "jwk", jwk.computeThumbprint().toString());
+        synchronized (decrypters) {
+            var entry = decrypters.get(cacheKey);
+            if (entry != null) {
+                return entry.decrypter();
+            }
+        }
+        return put(cacheKey, jwk.getKeyID(), toPrivateKey(jwk));
+    }
+
+    JWEDecrypter get(String kid, String providerId, PrivateKey privateKey) throws JOSEException {
+        var cacheKey = cacheKey(kid, providerId, version(privateKey));
+        synchronized (decrypters) {
+            var entry = decrypters.get(cacheKey);
+            if (entry != null && (entry.privateKey() == privateKey || entry.privateKey().equals(privateKey))) {
+                return entry.decrypter();
+            }
+        }
+        return put(cacheKey, kid, privateKey);
+    }
+
+    int size() {
+        synchronized (decrypters) {
+            return decrypters.size();
+        }
+    }
+
+    private JWEDecrypter put(String cacheKey, String kid, PrivateKey privateKey) throws JOSEException {
+        var decrypter = create(privateKey);
+        synchronized (decrypters) {
+            decrypters.put(cacheKey, new Entry(privateKey, decrypter));
+        }
+        logger.debugf("[put] Cached %s decrypter for kid=%s", privateKey.getAlgorithm(), kid);
+        return decrypter;
+    }
+
+    static JWEDecrypter create(PrivateKey privateKey) throws JOSEException {
+        if (privateKey instanceof ECPrivateKey ecPrivateKey) {
+            return new ECDHDecrypter(ecPrivateKey);
+        }
+        if (privateKey instanceof RSAPrivateKey rsaPrivateKey) {
+            return new RSADecrypter(rsaPrivateKey);
+        }
+        throw new JOSEException("unsupported enc key type: " + privateKey.getAlgorithm());
+    }
+
+    static PrivateKey toPrivateKey(JWK jwk) throws JOSEException {
+        return switch (jwk.getKeyType().getValue()) {
+            case "EC" -> jwk.toECKey().toPrivateKey();
+            case "RSA" -> jwk.toRSAKey().toPrivateKey();
+            default -> throw new JOSEException("unsupported enc key type: " + jwk.getKeyType());
+        };
+    }
+
+    /**
+     * Cheap fingerprint of the private key material. Collisions are resolved by comparing the
+     * cached key on lookup.
+     */
+    static String version(PrivateKey privateKey) {
+        if (privateKey instanceof ECPrivateKey ec) {
+            return Integer.toHexString(ec.getS().hashCode());
+        }
+        if (privateKey instanceof RSAPrivateKey rsa) {
+            return Integer.toHexString(31 * rsa.getModulus().hashCode() + rsa.getPrivateExponent().hashCode());
+        }
+        return Integer.toHexString(System.identityHashCode(privateKey));
+    }
+
+    static String cacheKey(String kid, String providerId, String version) {
+        return kid + "|" + providerId + "|" + version;
+    }
+
+    record Entry(PrivateKey privateKey, JWEDecrypter decrypter) {
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWEObject;
+import org.jboss.logging.Logger;
+import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+
+import java.security.interfaces.ECPrivateKey;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the decryption key for a JWE without a {@code kid}. The realm's ENC keys for the JWE
+ * algorithm are tried in priority order, active keys before passive ones, and the key that
+ * worked is remembered per issuer and algorithm so later tokens from the same issuer are
+ * decrypted with a single attempt even while two keys overlap during a rotation.
+ * <p>
+ * A token that needed more than one attempt counts as a miss; {@link #getStats()} exposes the
+ * counters and every miss is logged with them.
+ */
+public class JweKeySelector {
+    private static final Logger logger = Logger.getLogger(JweKeySelector.class);
+
+    static final int MAX_ENTRIES = 256;
+
+    private static final JweKeySelector INSTANCE = new JweKeySelector(MAX_ENTRIES);
+
+    private final Map<String, String> preferredKids;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    JweKeySelector(int maxEntries) {
+        this.preferredKids = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static JweKeySelector getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Issuer that scopes the learned key for tokens from the IdP of {@code config}: its
+     * configured issuer, or its alias when it has none.
+     */
+    public static String issuer(OIDCIdentityProviderConfig config) {
+        return config.getIssuer() != null ? config.getIssuer() : config.getAlias();
+    }
+
+    /**
+     * Decrypt {@code jwe} with one of the realm's ENC keys for its algorithm. {@code issuer}
+     * scopes the learned key, e.g. the IdP issuer the token came from.
+     */
+    public void decrypt(KeycloakSession session, RealmModel realm, String issuer, JWEObject jwe) throws JOSEException {
+        var alg = jwe.getHeader().getAlgorithm().getName();
+        var candidates = DecryptionKeyIndex.getInstance().getCandidatesByAlgorithm(session, realm, alg);
+        decrypt(realm.getId() + "|" + issuer + "|" + alg, candidates, jwe);
+    }
+
+    void decrypt(String affinityKey, List<KeyWrapper> candidates, JWEObject jwe) throws JOSEException {
+        var alg = jwe.getHeader().getAlgorithm().getName();
+        var ordered = order(affinityKey, candidates);
+        if (ordered.isEmpty()) {
+            failures.incrementAndGet();
+            throw new JOSEException("No ENC private key to decrypt JWE (alg=" + alg + ")");
+        }
+
+        JOSEException lastError = null;
+        for (var i = 0; i < ordered.size(); i++) {
+            var key = ordered.get(i);
+            if (alg.startsWith("ECDH-ES") && !(key.getPrivateKey() instanceof ECPrivateKey)) {
+                continue;
+            }
+            try {
+                jwe.decrypt(JweDecrypterCache.getInstance().get(key));
+            } catch (JOSEException e) {
+                lastError = e;
+                continue;
+            }
+
+            remember(affinityKey, key.getKid());
+            if (i == 0) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                logger.infof("[decrypt] kid-less JWE for %s decrypted by %s after %d failed attempts, %s",
+                        affinityKey, key.getKid(), i, getStats());
+            }
+            return;
+        }
+
+        failures.incrementAndGet();
+        logger.warnf("[decrypt] No ENC key of %d candidates decrypted kid-less JWE for %s, %s",
+                ordered.size(), affinityKey, getStats());
+        throw lastError != null ? lastError : new JOSEException("No ENC key compatible with " + alg);
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), failures.get());
+    }
+
+    private List<KeyWrapper> order(String affinityKey, List<KeyWrapper> candidates) {
+        String preferred;
+        synchronized (preferredKids) {
+            preferred = preferredKids.get(affinityKey);
+        }
+        if (preferred == null || candidates.isEmpty() || preferred.equals(candidates.get(0).getKid())) {
+            return candidates;
+        }
+        var ordered = new ArrayList<KeyWrapper>(candidates.size());
+        for (var key : candidates) {
+            if (preferred.equals(key.getKid())) {
+                ordered.add(0, key);
+            } else {
+                ordered.add(key);
+            }
+        }
+        return ordered;
+    }
+
+    private void remember(String affinityKey, String kid) {
+        if (kid == null) {
+            return;
+        }
+        synchronized (preferredKids) {
+            preferredKids.put(affinityKey, kid);
+        }
+    }
+
+    /**
+     * Kid-less decryptions that worked on the first attempt, needed more than one, or failed.
+     */
+    public record Stats(long hits, long misses, long failures) {
+    }
+}
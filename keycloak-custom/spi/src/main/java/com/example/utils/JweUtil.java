@@ -1,27 +1,20 @@
 package com.example.utils;
 
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWEObject;
-import com.nimbusds.jose.crypto.ECDHDecrypter;
-import com.nimbusds.jose.crypto.ECDSAVerifier;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jwt.SignedJWT;
 import org.jboss.logging.Logger;
 import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
 import org.keycloak.broker.provider.IdentityBrokerException;
-import org.keycloak.broker.provider.util.SimpleHttp;
-import org.keycloak.crypto.KeyStatus;
-import org.keycloak.crypto.KeyUse;
 import org.keycloak.crypto.KeyWrapper;
 import org.keycloak.crypto.SignatureProvider;
-import org.keycloak.jose.JOSEParser;
-import org.keycloak.jose.jwe.JWE;
 import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
 import org.keycloak.keys.loader.PublicKeyStorageManager;
 import org.keycloak.models.KeycloakSession;
 
 import java.nio.charset.StandardCharsets;
 import java.security.interfaces.ECPrivateKey;
+import java.text.ParseException;
 
 import static org.keycloak.keys.loader.PublicKeyStorageManager.getIdentityProviderKeyWrapper;
 
@@ -49,7 +42,7 @@ public class JweUtil {
                     jwsInput);
         }
 
-        return verifyViaJwks(session, configuration.getJwksUrl(), jwsInput);
+        return verifyViaJwks(session, configuration, jwsInput);
     }
 
     public static boolean verifyViaKey(KeycloakSession session,
@@ -82,27 +75,30 @@ public class JweUtil {
     }
 
     public static boolean verifyViaJwks(KeycloakSession session,
-                                        String jwksUrl,
+                                        OIDCIdentityProviderConfig configuration,
                                         JWSInput jwsInput) {
-        var hdr = jwsInput.getHeader();
         try {
-            var jwksJson = SimpleHttp.doGet(jwksUrl, session).asJson();
-            var jwkSet = JWKSet.parse(jwksJson.toString());
-            logger.infof("[verify] Fetched JWKS from URL: %s with result %s", jwksUrl, jwksJson.toString());
+            return verifyViaJwks(session, configuration, ParsedToken.parse(jwsInput.getWireString()));
+        } catch (ParseException e) {
+            logger.error("[verify] Failed to parse token", e);
+            return false;
+        }
+    }
 
-            var kid = hdr.getKeyId();
-            var jwk = jwkSet.getKeyByKeyId(kid);
+    /**
+     * Verify the token against its issuer's published JWKS, reusing the header and signing
+     * input decoded when the token was parsed.
+     */
+    public static boolean verifyViaJwks(KeycloakSession session,
+                                        OIDCIdentityProviderConfig configuration,
+                                        ParsedToken token) {
+        var hdr = token.getHeader();
+        var jwksUrl = configuration.getJwksUrl();
+        try {
+            var kid = hdr.getKeyID();
+            var jwk = JwksCache.getInstance().getKey(session, configuration, jwksUrl, kid);
             if (jwk == null) {
-                logger.errorf("[verify] No matching key found in JWKS for Key ID: %s", kid);
-                return false;
-            }
-
-            var compact = jwsInput.getWireString();
-            var sjwt = SignedJWT.parse(compact);
-            if (!hdr.getAlgorithm().name().equalsIgnoreCase(sjwt.getHeader().getAlgorithm().getName())) {
-                logger.errorf("[verify] JWS alg header %s does not match SignedJWT alg %s",
-                        hdr.getAlgorithm().name(),
-                        sjwt.getHeader().getAlgorithm().getName());
+                logger.errorf("[verify] No matching key found in JWKS %s for Key ID: %s", jwksUrl, kid);
                 return false;
             }
             if (jwk.getKeyUse() != null && !"sig".equalsIgnoreCase(jwk.getKeyUse().identifier())) {
@@ -110,18 +106,13 @@ public class JweUtil {
                 return false;
             }
 
-            var ok = false;
-            if ("EC".equals(jwk.getKeyType().getValue())) {
-                var ecJwk = jwk.toECKey();
-                ok = sjwt.verify(new ECDSAVerifier(ecJwk));
-            } else if ("RSA".equals(jwk.getKeyType().getValue())) {
-                ok = sjwt.verify(new RSASSAVerifier(jwk.toRSAKey()));
-            } else {
-                logger.errorf("[verify] unsupported kty=%s", jwk.getKeyType());
+            var verifier = JwksCache.getInstance().verifier(
+                    JwksCache.cacheKey(session.getContext().getRealm().getId(), jwksUrl), jwk, hdr.getAlgorithm());
+            if (verifier == null) {
                 return false;
             }
 
-            if (!ok) {
+            if (!token.getJwsObject().verify(verifier)) {
                 logger.error("[verify] signature verification failed");
                 return false;
             } else {
@@ -134,6 +125,27 @@ public class JweUtil {
         }
     }
 
+    public static boolean verify(KeycloakSession session,
+                                 OIDCIdentityProviderConfig configuration,
+                                 ParsedToken token) throws JWSInputException {
+        var hdr = token.getHeader();
+        logger.infof("[verify] Verifying JWS with Algorithm: %s, Key ID: %s", hdr.getAlgorithm().getName(), hdr.getKeyID());
+        if (!configuration.isValidateSignature()) {
+            logger.warnf("Skipping signature validation as per configuration.");
+            return true;
+        }
+        if (!configuration.isUseJwksUrl()) {
+            logger.infof("[verify] Using default signature verification in superclass.");
+            var jwsInput = token.toJwsInput();
+            return verifyViaKey(session,
+                    configuration,
+                    getIdentityProviderKeyWrapper(session, session.getContext().getRealm(), configuration, jwsInput),
+                    jwsInput);
+        }
+
+        return verifyViaJwks(session, configuration, token);
+    }
+
     public static String parse(KeycloakSession session,
                                OIDCIdentityProviderConfig configuration,
                                String encodedToken,
@@ -143,91 +155,87 @@ public class JweUtil {
         }
 
         try {
-            JWSInput jws;
-            var joseToken = JOSEParser.parse(encodedToken);
-            if (joseToken instanceof JWE) {
-                var jwe = JWEObject.parse(encodedToken);
-                var hdr = jwe.getHeader();
-                var kid = hdr.getKeyID();
-                var alg = String.valueOf(hdr.getAlgorithm()); // e.g. ECDH-ES+A256KW
-                var enc = String.valueOf(hdr.getEncryptionMethod()); // e.g. A256CBC-HS512
-                var cty = hdr.getContentType(); // often "JWT" for nested JWS
-                logger.infof("[parse] JWE hdr: kid=%s alg=%s enc=%s cty=%s", kid, alg, enc, cty);
-
-                KeyWrapper key;
-                if (kid != null && !kid.isBlank()) {
-                    logger.infof("[parse] No kid in header, looking for active decryption key");
-                    key = session.keys()
-                            .getKeysStream(session.getContext().getRealm())
-                            .peek(kw -> logger.infof("[parse] key: kid=%s use=%s alg=%s status=%s type=%s",
-                                    kw.getKid(),
-                                    kw.getUse(),
-                                    kw.getAlgorithm(),
-                                    kw.getStatus(),
-                                    kw.getPrivateKey() != null ? kw.getPrivateKey().getAlgorithm() : "null"))
-                            .filter(kw -> kw.getStatus() == KeyStatus.ACTIVE)
-                            .filter(kw -> kw.getUse() == KeyUse.ENC)
-                            .filter(kw -> kid.equals(kw.getKid()))
-                            .peek(kw -> logger.infof("[parse] Found key with kid: %s with use %s and algorithm %s", kw.getKid(), kw.getUse(), kw.getAlgorithm()))
-                            .findFirst()
-                            .orElse(null);
-                } else {
-                    logger.infof("[parse] Kid is exists, Looking for decryption key with kid: %s", kid);
-                    key = session.keys()
-                            .getKeysStream(session.getContext().getRealm())
-                            .peek(kw -> logger.infof("[parse] key: kid=%s use=%s alg=%s status=%s type=%s",
-                                    kw.getKid(),
-                                    kw.getUse(),
-                                    kw.getAlgorithm(),
-                                    kw.getStatus(),
-                                    kw.getPrivateKey() != null ? kw.getPrivateKey().getAlgorithm() : "null"))
-                            .filter(kw -> kw.getStatus() == KeyStatus.ACTIVE)
-                            .filter(kw -> kw.getUse() == KeyUse.ENC)
-                            .filter(kw -> alg.equalsIgnoreCase(kw.getAlgorithm()))
-                            .peek(kw -> logger.infof("[parse] Found key with kid: %s with use %s and algorithm %s", kw.getKid(), kw.getUse(), kw.getAlgorithm()))
-                            .findFirst()
-                            .orElse(null);
-                }
-                if (key == null || key.getPrivateKey() == null) {
-                    throw new IdentityBrokerException("[parse] No ENC private key to decrypt JWE (alg=" + alg + ", kid=" + kid + ")");
+            var encrypted = ParsedToken.isJwe(encodedToken);
+            var content = encrypted ? decrypt(session, configuration, encodedToken) : encodedToken;
+            if (!ParsedToken.isJws(content)) {
+                if (!encrypted) {
+                    throw new IdentityBrokerException("[parse] Invalid token type");
                 }
-                if (alg.startsWith("ECDH-ES") && !(key.getPrivateKey() instanceof ECPrivateKey)) {
-                    throw new IdentityBrokerException("[parse] ENC key is not EC private key required by " + alg + " (kid=" + key.getKid() + ") actually " + key.getPrivateKey().getClass().getName());
+                if (shouldBeSigned) {
+                    throw new IdentityBrokerException("[parse] Token is not a signed JWS");
                 }
+                logger.infof("[parse] Decrypted content is not a JOSE token, returning raw content");
+                return content;
+            }
 
-                var decrypter = new ECDHDecrypter((ECPrivateKey) key.getPrivateKey());
-                jwe.decrypt(decrypter);
-                var content = jwe.getPayload().toString();
-
-                try {
-                    joseToken = JOSEParser.parse(content);
-                } catch (Exception e) {
-                    if (shouldBeSigned) {
-                        throw new IdentityBrokerException("[parse] Token is not a signed JWS", e);
-                    }
-                    logger.infof("[parse] Decrypted content is not a JOSE token, returning raw content");
-                    return content;
-                }
+            return verified(session, configuration, ParsedToken.parse(content)).getPayloadString();
+        } catch (Exception e) {
+            throw new IdentityBrokerException("[parse] Invalid token", e);
+        }
+    }
 
-                if (!(joseToken instanceof JWSInput)) {
-                    throw new IdentityBrokerException("[parse] Invalid token type");
-                }
+    /**
+     * Decrypt (when the token is a JWE), parse and verify a signed token in a single pass. The
+     * returned token carries the decoded header, payload and claims for validation.
+     */
+    public static ParsedToken parseToken(KeycloakSession session,
+                                         OIDCIdentityProviderConfig configuration,
+                                         String encodedToken) {
+        if (encodedToken == null) {
+            throw new IdentityBrokerException("[parseToken] No token from server.");
+        }
 
-                jws = (JWSInput) joseToken;
-            } else if (joseToken instanceof JWSInput jwsInput) {
-                logger.infof("[parse] Token is a JWS");
-                jws = jwsInput;
-            } else {
-                throw new IdentityBrokerException("[parse] Invalid token type");
+        try {
+            var content = ParsedToken.isJwe(encodedToken) ? decrypt(session, configuration, encodedToken) : encodedToken;
+            if (!ParsedToken.isJws(content)) {
+                throw new IdentityBrokerException("[parseToken] Token is not a signed JWS");
             }
+            return verified(session, configuration, ParsedToken.parse(content));
+        } catch (Exception e) {
+            throw new IdentityBrokerException("[parseToken] Invalid token", e);
+        }
+    }
 
-            if (!verify(session, configuration, jws)) {
-                throw new IdentityBrokerException("[parse] token signature validation failed");
-            }
+    private static ParsedToken verified(KeycloakSession session,
+                                        OIDCIdentityProviderConfig configuration,
+                                        ParsedToken token) throws JWSInputException {
+        if (!verify(session, configuration, token)) {
+            throw new IdentityBrokerException("[parse] token signature validation failed");
+        }
+        return token;
+    }
 
-            return new String(jws.getContent(), StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            throw new IdentityBrokerException("[parse] Invalid token", e);
+    private static String decrypt(KeycloakSession session,
+                                  OIDCIdentityProviderConfig configuration,
+                                  String encodedToken) throws ParseException, JOSEException {
+        var jwe = JWEObject.parse(encodedToken);
+        var hdr = jwe.getHeader();
+        var kid = hdr.getKeyID();
+        var alg = String.valueOf(hdr.getAlgorithm()); // e.g. ECDH-ES+A256KW
+        var enc = String.valueOf(hdr.getEncryptionMethod()); // e.g. A256CBC-HS512
+        var cty = hdr.getContentType(); // often "JWT" for nested JWS
+        logger.infof("[parse] JWE hdr: kid=%s alg=%s enc=%s cty=%s", kid, alg, enc, cty);
+
+        var realm = session.getContext().getRealm();
+        if (kid == null || kid.isBlank()) {
+            logger.debugf("[parse] No kid in header, trying decryption keys for alg: %s", alg);
+            JweKeySelector.getInstance().decrypt(session, realm, JweKeySelector.issuer(configuration), jwe);
+            return jwe.getPayload().toString();
+        }
+
+        logger.debugf("[parse] Looking up decryption key with kid: %s", kid);
+        var key = DecryptionKeyIndex.getInstance().getByKid(session, realm, kid);
+        if (key != null) {
+            logger.infof("[parse] Found key with kid: %s with use %s and algorithm %s", key.getKid(), key.getUse(), key.getAlgorithm());
         }
+        if (key == null || key.getPrivateKey() == null) {
+            throw new IdentityBrokerException("[parse] No ENC private key to decrypt JWE (alg=" + alg + ", kid=" + kid + ")");
+        }
+        if (alg.startsWith("ECDH-ES") && !(key.getPrivateKey() instanceof ECPrivateKey)) {
+            throw new IdentityBrokerException("[parse] ENC key is not EC private key required by " + alg + " (kid=" + key.getKid() + ") actually " + key.getPrivateKey().getClass().getName());
+        }
+
+        jwe.decrypt(JweDecrypterCache.getInstance().get(key));
+        return jwe.getPayload().toString();
     }
 }
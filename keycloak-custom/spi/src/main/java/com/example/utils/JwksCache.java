@@ -0,0 +1,336 @@
+package com.example.utils;
+
+import com.example.config.CustomOIDCIdentityProviderConfig;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import org.jboss.logging.Logger;
+import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
+import org.keycloak.broker.provider.util.SimpleHttp;
+import org.keycloak.models.KeycloakSession;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide cache of remote JSON Web Key Sets, keyed by realm and JWKS URL.
+ * <p>
+ * Entries live for the {@code max-age} advertised by the IdP, clamped to the floor and
+ * ceiling configured on the identity provider. A kid that is not in the cached set causes
+ * at most one refresh per {@link #KID_MISS_REFRESH_INTERVAL_MILLIS}, and concurrent
+ * refreshes of the same URL share a single HTTP fetch. When a refresh fails the last
+ * known set is served until a later fetch succeeds.
+ * <p>
+ * Keys registered through {@link #manage(String)} are kept fresh by {@link MetadataRefresher};
+ * an expired entry for such a key is served as-is instead of being fetched on the request path.
+ */
+public class JwksCache {
+    private static final Logger logger = Logger.getLogger(JwksCache.class);
+
+    public static final long DEFAULT_MIN_TTL_SECONDS = 60;
+    public static final long DEFAULT_MAX_TTL_SECONDS = 3600;
+    public static final long KID_MISS_REFRESH_INTERVAL_MILLIS = 10_000;
+
+    private static final JwksCache INSTANCE = new JwksCache(System::currentTimeMillis);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> managed = ConcurrentHashMap.newKeySet();
+    private final LongSupplier clock;
+
+    JwksCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public static JwksCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Look up a signing key for the IdP, fetching the JWKS over HTTP only when the cached
+     * copy has expired or does not contain {@code kid}.
+     */
+    public JWK getKey(KeycloakSession session, OIDCIdentityProviderConfig config, String jwksUrl, String kid) throws Exception {
+        var cacheKey = cacheKey(session.getContext().getRealm().getId(), jwksUrl);
+        return lookup(cacheKey, kid, Ttl.of(config), () -> fetch(session, jwksUrl));
+    }
+
+    JWK lookup(String cacheKey, String kid, Ttl ttl, Loader loader) throws Exception {
+        var jwk = getEntry(cacheKey, ttl, loader).keys().byKid(kid);
+        if (jwk != null) {
+            return jwk;
+        }
+
+        var entry = entries.get(cacheKey);
+        if (entry != null && clock.getAsLong() - entry.fetchedAt() < KID_MISS_REFRESH_INTERVAL_MILLIS) {
+            logger.debugf("[lookup] kid %s not found in %s, refresh suppressed (last fetch %d ms ago)",
+                    kid, cacheKey, clock.getAsLong() - entry.fetchedAt());
+            return entry.keys().byKid(kid);
+        }
+
+        logger.infof("[lookup] kid %s not found in %s, refreshing JWKS", kid, cacheKey);
+        return refresh(cacheKey, ttl, loader).keys().byKid(kid);
+    }
+
+    /**
+     * Signing keys that can verify a JWS with the given header: the key with that kid, or
+     * when the token has no kid, the keys published for that algorithm.
+     */
+    List<JWK> candidates(String cacheKey, String kid, JWSAlgorithm algorithm, Ttl ttl, Loader loader) throws Exception {
+        if (kid != null) {
+            var jwk = lookup(cacheKey, kid, ttl, loader);
+            return jwk != null ? List.of(jwk) : List.of();
+        }
+        return getEntry(cacheKey, ttl, loader).keys().forAlgorithm(algorithm);
+    }
+
+    private Entry getEntry(String cacheKey, Ttl ttl, Loader loader) throws Exception {
+        var entry = entries.get(cacheKey);
+        if (entry != null && clock.getAsLong() < entry.expiresAt()) {
+            logger.debugf("[getEntry] JWKS cache hit for %s", cacheKey);
+            return entry;
+        }
+        if (entry != null && managed.contains(cacheKey)) {
+            logger.debugf("[getEntry] JWKS for %s expired, serving stale set while refreshed in background", cacheKey);
+            return entry;
+        }
+
+        try {
+            return refresh(cacheKey, ttl, loader);
+        } catch (Exception e) {
+            if (entry == null) {
+                throw e;
+            }
+            logger.warnf(e, "[getEntry] Failed to refresh JWKS for %s, serving last known set", cacheKey);
+            return entry;
+        }
+    }
+
+    /**
+     * Verifier for a key returned by this cache for {@code cacheKey}, looked up by the
+     * thumbprint computed when its JWKS was fetched.
+     */
+    public JWSVerifier verifier(String cacheKey, JWK jwk, JWSAlgorithm algorithm) throws JOSEException {
+        var entry = entries.get(cacheKey);
+        var thumbprint = entry != null ? entry.keys().thumbprint(jwk) : JwsVerifierCache.thumbprint(jwk);
+        return JwsVerifierCache.getInstance().get(jwk, thumbprint, algorithm);
+    }
+
+    KeyIndex keys(String cacheKey) {
+        var entry = entries.get(cacheKey);
+        return entry != null ? entry.keys() : null;
+    }
+
+    public void invalidate(String cacheKey) {
+        entries.remove(cacheKey);
+    }
+
+    /**
+     * Mark {@code cacheKey} as refreshed in the background so expired entries are served
+     * stale rather than fetched by the caller.
+     */
+    void manage(String cacheKey) {
+        managed.add(cacheKey);
+    }
+
+    void unmanage(String cacheKey) {
+        managed.remove(cacheKey);
+    }
+
+    /**
+     * Fetch the JWKS now, bypassing the cached entry, and return the TTL in seconds it was
+     * cached for. Shares the in-flight fetch with concurrent request-path refreshes.
+     */
+    long reload(String cacheKey, Ttl ttl, Loader loader) throws Exception {
+        var entry = refresh(cacheKey, ttl, loader);
+        return (entry.expiresAt() - entry.fetchedAt()) / 1000L;
+    }
+
+    private Entry refresh(String cacheKey, Ttl ttl, Loader loader) throws Exception {
+        var mine = new CompletableFuture<Entry>();
+        var existing = inFlight.putIfAbsent(cacheKey, mine);
+        if (existing != null) {
+            logger.debugf("[refresh] Joining in-flight JWKS fetch for %s", cacheKey);
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            var fetched = loader.load();
+            var now = clock.getAsLong();
+            var entry = new Entry(fetched.jwkSet(), KeyIndex.of(fetched.jwkSet()), now, now + ttl.clamp(fetched.maxAgeSeconds()) * 1000L);
+            var previous = entries.put(cacheKey, entry);
+            if (previous != null) {
+                JwsVerifierCache.getInstance().evictRemoved(previous.keys().thumbprints().values(), entry.keys().thumbprints().values());
+            }
+            logger.infof("[refresh] Cached JWKS for %s with %d keys until %d",
+                    cacheKey, fetched.jwkSet().getKeys().size(), entry.expiresAt());
+            mine.complete(entry);
+            return entry;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    static Fetched fetch(KeycloakSession session, String jwksUrl) throws Exception {
+        logger.infof("[fetch] HTTP Request ---> %s", jwksUrl);
+        try (var response = HttpUtil.executeRequest(jwksUrl, SimpleHttp.doGet(jwksUrl, session))) {
+            var maxAge = parseMaxAge(response.getFirstHeader("Cache-Control"));
+            return new Fetched(JWKSet.parse(response.asString()), maxAge);
+        }
+    }
+
+    /**
+     * Extract {@code max-age} from a Cache-Control header. {@code no-cache} and
+     * {@code no-store} count as zero; a missing directive returns {@code null}.
+     */
+    static Long parseMaxAge(String cacheControl) {
+        if (cacheControl == null || cacheControl.isBlank()) {
+            return null;
+        }
+
+        Long maxAge = null;
+        for (var directive : cacheControl.split(",")) {
+            var d = directive.trim().toLowerCase(Locale.ROOT);
+            if (d.equals("no-cache") || d.equals("no-store")) {
+                return 0L;
+            }
+            if (d.startsWith("max-age=")) {
+                try {
+                    maxAge = Long.parseLong(d.substring("max-age=".length()).replace("\"", ""));
+                } catch (NumberFormatException e) {
+                    logger.warnf("[parseMaxAge] Ignoring invalid Cache-Control directive: %s", directive);
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    public static String cacheKey(String realmId, String jwksUrl) {
+        return realmId + "|" + jwksUrl;
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        Fetched load() throws Exception;
+    }
+
+    record Fetched(JWKSet jwkSet, Long maxAgeSeconds) {
+    }
+
+    record Entry(JWKSet jwkSet, KeyIndex keys, long fetchedAt, long expiresAt) {
+    }
+
+    /**
+     * Signing keys of a JWKS indexed by kid and by algorithm, built once per fetch. Keys
+     * without an {@code alg} are indexed under their key type and match any algorithm of that
+     * family. The RFC 7638 thumbprint of every key is computed here too, keyed by instance,
+     * so that verifier lookups for keys handed out by this index do no hashing.
+     */
+    record KeyIndex(Map<String, JWK> kids, Map<String, List<JWK>> algorithms, Map<JWK, String> thumbprints) {
+
+        static KeyIndex of(JWKSet jwkSet) {
+            var kids = new HashMap<String, JWK>();
+            var algorithms = new HashMap<String, List<JWK>>();
+            var thumbprints = new IdentityHashMap<JWK, String>();
+            for (var jwk : jwkSet.getKeys()) {
+                thumbprints.put(jwk, JwsVerifierCache.thumbprint(jwk));
+                if (jwk.getKeyID() != null) {
+                    kids.putIfAbsent(jwk.getKeyID(), jwk);
+                }
+                if (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                    continue;
+                }
+                var indexKey = jwk.getAlgorithm() != null ? jwk.getAlgorithm().getName() : "kty:" + jwk.getKeyType().getValue();
+                algorithms.computeIfAbsent(indexKey, k -> new ArrayList<>()).add(jwk);
+            }
+            algorithms.replaceAll((k, v) -> List.copyOf(v));
+            return new KeyIndex(Map.copyOf(kids), Map.copyOf(algorithms), Collections.unmodifiableMap(thumbprints));
+        }
+
+        /**
+         * Thumbprint of {@code jwk}, computed at fetch time when it came from this index.
+         */
+        String thumbprint(JWK jwk) {
+            var thumbprint = thumbprints.get(jwk);
+            return thumbprint != null ? thumbprint : JwsVerifierCache.thumbprint(jwk);
+        }
+
+        JWK byKid(String kid) {
+            return kid != null ? kids.get(kid) : null;
+        }
+
+        List<JWK> forAlgorithm(JWSAlgorithm algorithm) {
+            if (algorithm == null) {
+                return List.of();
+            }
+            var explicit = algorithms.getOrDefault(algorithm.getName(), List.of());
+            var byType = algorithms.getOrDefault("kty:" + keyType(algorithm), List.of());
+            if (byType.isEmpty()) {
+                return explicit;
+            }
+            if (explicit.isEmpty()) {
+                return byType;
+            }
+            var all = new ArrayList<JWK>(explicit.size() + byType.size());
+            all.addAll(explicit);
+            all.addAll(byType);
+            return all;
+        }
+
+        private static String keyType(JWSAlgorithm algorithm) {
+            if (JWSAlgorithm.Family.EC.contains(algorithm)) {
+                return "EC";
+            }
+            if (JWSAlgorithm.Family.RSA.contains(algorithm)) {
+                return "RSA";
+            }
+            if (JWSAlgorithm.Family.ED.contains(algorithm)) {
+                return "OKP";
+            }
+            return "oct";
+        }
+    }
+
+    /**
+     * TTL bounds applied to the {@code max-age} returned by the IdP.
+     */
+    record Ttl(long minSeconds, long maxSeconds) {
+        static final Ttl DEFAULT = new Ttl(DEFAULT_MIN_TTL_SECONDS, DEFAULT_MAX_TTL_SECONDS);
+
+        static Ttl of(OIDCIdentityProviderConfig config) {
+            if (config instanceof CustomOIDCIdentityProviderConfig custom) {
+                var min = custom.getJwksCacheMinTtl();
+                return new Ttl(min, Math.max(min, custom.getJwksCacheMaxTtl()));
+            }
+            return DEFAULT;
+        }
+
+        long clamp(Long maxAgeSeconds) {
+            if (maxAgeSeconds == null) {
+                return minSeconds;
+            }
+            return Math.min(maxSeconds, Math.max(minSeconds, maxAgeSeconds));
+        }
+    }
+}
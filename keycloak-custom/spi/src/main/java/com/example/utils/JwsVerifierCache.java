@@ -0,0 +1,119 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.KeyType;
+import org.jboss.logging.Logger;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of ready-to-use JWS verifiers keyed by the RFC 7638 thumbprint of the
+ * verification key plus the JWS algorithm. Building an {@link ECDSAVerifier} converts the JWK
+ * and validates the EC point, which is wasted work when the same IdP key signs every token.
+ * <p>
+ * Nimbus verifiers are thread-safe, so one instance is shared by all requests. Thumbprints
+ * come from {@link JwksCache}, which computes them once per fetch and drops the verifiers of
+ * keys that disappear from a refreshed JWKS through {@link #evictRemoved(Collection, Collection)}.
+ */
+public class JwsVerifierCache {
+    private static final Logger logger = Logger.getLogger(JwsVerifierCache.class);
+
+    static final int MAX_ENTRIES = 256;
+
+    private static final JwsVerifierCache INSTANCE = new JwsVerifierCache(MAX_ENTRIES);
+
+    private final Map<String, JWSVerifier> verifiers;
+
+    JwsVerifierCache(int maxEntries) {
+        this.verifiers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JWSVerifier> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static JwsVerifierCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Return a verifier for {@code jwk} with the given thumbprint, building it on first use, so
+     * that a cache hit does no hashing. Unsupported key types return {@code null}.
+     */
+    public JWSVerifier get(JWK jwk, String thumbprint, JWSAlgorithm algorithm) throws JOSEException {
+        var cacheKey = cacheKey(thumbprint, algorithm);
+        synchronized (verifiers) {
+            var verifier = verifiers.get(cacheKey);
+            if (verifier != null) {
+                return verifier;
+            }
+        }
+
+        var verifier = create(jwk);
+        if (verifier == null) {
+            return null;
+        }
+        synchronized (verifiers) {
+            var existing = verifiers.putIfAbsent(cacheKey, verifier);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        logger.debugf("[get] Cached %s verifier for kid=%s alg=%s", jwk.getKeyType(), jwk.getKeyID(), algorithm);
+        return verifier;
+    }
+
+    /**
+     * Drop verifiers for the thumbprints in {@code previous} that are not in {@code current}.
+     */
+    public void evictRemoved(Collection<String> previous, Collection<String> current) {
+        var removed = new HashSet<>(previous);
+        removed.removeAll(current);
+        if (removed.isEmpty()) {
+            return;
+        }
+        logger.infof("[evictRemoved] %d keys were removed from JWKS, evicting their verifiers", removed.size());
+
+        synchronized (verifiers) {
+            verifiers.keySet().removeIf(key -> removed.contains(key.substring(0, key.indexOf(':'))));
+        }
+    }
+
+    int size() {
+        synchronized (verifiers) {
+            return verifiers.size();
+        }
+    }
+
+    static JWSVerifier create(JWK jwk) throws JOSEException {
+        if (KeyType.EC.equals(jwk.getKeyType())) {
+            return new ECDSAVerifier(jwk.toECKey());
+        }
+        if (KeyType.RSA.equals(jwk.getKeyType())) {
+            return new RSASSAVerifier(jwk.toRSAKey());
+        }
+        logger.errorf("[create] unsupported kty=%s", jwk.getKeyType());
+        return null;
+    }
+
+    static String cacheKey(String thumbprint, JWSAlgorithm algorithm) {
+        return thumbprint + ":" + (algorithm != null ? algorithm.getName() : "");
+    }
+
+    static String thumbprint(JWK jwk) {
+        try {
+            return jwk.computeThumbprint().toString();
+        } catch (JOSEException e) {
+            throw new IllegalArgumentException("Unable to compute JWK thumbprint for kid=" + jwk.getKeyID(), e);
+        }
+    }
+}
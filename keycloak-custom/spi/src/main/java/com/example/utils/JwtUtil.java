@@ -1,30 +1,14 @@
 package com.example.utils;
 
-import static java.util.Objects.isNull;
-
 import java.io.IOException;
-import java.security.interfaces.ECPrivateKey;
-import java.time.Instant;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.function.BiFunction;
 
-import com.nimbusds.jose.crypto.ECDHDecrypter;
+import com.example.config.CustomOIDCIdentityProviderConfig;
 import com.nimbusds.jwt.EncryptedJWT;
 import com.nimbusds.jwt.JWTParser;
 import org.keycloak.broker.oidc.OIDCIdentityProviderConfig;
 import org.keycloak.broker.provider.IdentityBrokerException;
-import org.keycloak.crypto.KeyUse;
-import org.keycloak.crypto.KeyWrapper;
-
-import com.example.config.CustomOIDCIdentityProviderConfig;
-import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.JOSEObjectType;
-import com.nimbusds.jose.JWSAlgorithm;
-import com.nimbusds.jose.JWSHeader;
-import com.nimbusds.jose.crypto.ECDSASigner;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 import org.keycloak.models.KeycloakSession;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.JsonWebToken;
@@ -38,11 +22,7 @@ public class JwtUtil {
     }
 
     public static boolean isJwt(String token) {
-        if (token == null || token.isEmpty()) {
-            return false;
-        }
-        var parts = token.split("\\.");
-        return parts.length == 3;
+        return CompactJose.classify(token) == CompactJose.Type.JWS;
     }
 
     public static JsonWebToken validateToken(OIDCIdentityProviderConfig config,
@@ -57,6 +37,29 @@ public class JwtUtil {
             throw new IdentityBrokerException("[validateToken] Invalid token", e);
         }
 
+        return validateClaims(config, token, ignoreAudience);
+    }
+
+    /**
+     * Validate a token that was already decrypted, parsed and verified by
+     * {@link JweUtil#parseToken}, reusing its decoded claims.
+     */
+    public static JsonWebToken validateToken(OIDCIdentityProviderConfig config,
+                                             ParsedToken parsedToken,
+                                             boolean ignoreAudience) {
+        JsonWebToken token;
+        try {
+            token = parsedToken.getClaims();
+        } catch (IOException e) {
+            throw new IdentityBrokerException("[validateToken] Invalid token", e);
+        }
+
+        return validateClaims(config, token, ignoreAudience);
+    }
+
+    private static JsonWebToken validateClaims(OIDCIdentityProviderConfig config,
+                                               JsonWebToken token,
+                                               boolean ignoreAudience) {
         var iss = token.getIssuer();
         var allowedTimeSkew = config.getAllowedClockSkew();
         if (!token.isActive(allowedTimeSkew)) {
@@ -89,41 +92,12 @@ public class JwtUtil {
         return token;
     }
 
-    public static String createBearer(CustomOIDCIdentityProviderConfig configuration,
-                                      KeyWrapper keyWrapper,
-                                      JWSAlgorithm algorithm) {
-        var header = new JWSHeader.Builder(algorithm)
-                .type(JOSEObjectType.JWT)
-                .keyID(keyWrapper.getKid())
-                .build();
-        var differentTimes = isNull(configuration.getIdpDifferentTimes())
-                ? 0
-                : Integer.parseInt(configuration.getIdpDifferentTimes());
-        var now = Instant.now().plusSeconds(differentTimes);
-        var payload = new JWTClaimsSet.Builder()
-                .subject(configuration.getClientId())
-                .issuer(configuration.getClientId())
-                .issueTime(Date.from(now))
-                .expirationTime(Date.from(now.plusSeconds(120)))
-                .audience(configuration.getIssuer())
-                .build();
-
-        var signedJWT = new SignedJWT(header, payload);
-        try {
-            signedJWT.sign(new ECDSASigner((ECPrivateKey) keyWrapper.getPrivateKey()));
-        } catch (JOSEException e) {
-            logger.errorf(e, "Failed to sign the JWT. Messages: %s", e.getMessage());
-        }
-
-        return signedJWT.serialize();
-    }
-
     public static AccessTokenResponse decryptAccessTokenResponse(String accessTokenResponse,
                                                                  KeycloakSession session,
-                                                                 boolean isEncryptedIdTokenFlag) {
+                                                                 CustomOIDCIdentityProviderConfig configuration) {
         try {
             var tokenResponse = JsonSerialization.readValue(accessTokenResponse, AccessTokenResponse.class);
-            if (isEncryptedIdTokenFlag) {
+            if (configuration.isEncryptedIdTokenFlag()) {
                 var idToken = tokenResponse.getIdToken();
                 if (idToken == null || idToken.isEmpty()) {
                     var exception = new IOException("Error parsing the response: " + accessTokenResponse);
@@ -136,12 +110,16 @@ public class JwtUtil {
                 var algorithm = encryptedJWT.getHeader().getAlgorithm().getName();
                 logger.infof("Decrypting ID Token with Key ID: %s and Algorithm: %s", keyID, algorithm);
 
-                var key = session.keys().getKey(session.getContext().getRealm(), keyID, KeyUse.ENC, algorithm);
-                var privateKey = (ECPrivateKey) key.getPrivateKey();
-                var decrypter = new ECDHDecrypter(privateKey);
-                logger.infof("Using private key with format: %s", privateKey.getFormat());
-
-                encryptedJWT.decrypt(decrypter);
+                var realm = session.getContext().getRealm();
+                if (keyID == null || keyID.isBlank()) {
+                    JweKeySelector.getInstance().decrypt(session, realm, JweKeySelector.issuer(configuration), encryptedJWT);
+                } else {
+                    var key = DecryptionKeyIndex.getInstance().getByKid(session, realm, keyID);
+                    if (key == null || !algorithm.equals(key.getAlgorithmOrDefault())) {
+                        throw new IOException("No ENC key found for Key ID: " + keyID + " and Algorithm: " + algorithm);
+                    }
+                    encryptedJWT.decrypt(JweDecrypterCache.getInstance().get(key));
+                }
                 tokenResponse.setIdToken(encryptedJWT.getPayload().toString());
             }
 
@@ -15,6 +15,7 @@ import java.security.spec.*;
 import java.util.Base64;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.example.key.SingleJwkKeyProviderFactory.*;
 
@@ -27,6 +28,8 @@ public class KeyUtil {
             "P-521", "secp521r1",
             "secp256k1", "secp256k1"
     );
+    // Curve parameters never change, so each curve is only looked up once per JVM
+    private static final Map<String, ECParameterSpec> EC_PARAMETER_SPECS = new ConcurrentHashMap<>();
 
     private KeyUtil() {
         // Utility class
@@ -40,12 +43,12 @@ public class KeyUtil {
 
         var a = alg.toUpperCase();
         if (a.startsWith("ES")) {
-            logger.infof("Algorithm '%s' indicates signature use", alg);
+            logger.debugf("Algorithm '%s' indicates signature use", alg);
             return "sig";
         }
 
         if (a.startsWith("ECDH-ES") || a.contains("KW")) {
-            logger.infof("Algorithm '%s' indicates encryption use", alg);
+            logger.debugf("Algorithm '%s' indicates encryption use", alg);
             return "enc";
         }
 
@@ -55,16 +58,16 @@ public class KeyUtil {
 
     public static String normalizeAlg(String alg, String use) {
         if (alg != null && !alg.isBlank()) {
-            logger.infof("Using provided algorithm '%s'", alg);
+            logger.debugf("Using provided algorithm '%s'", alg);
             return alg;
         }
 
         if ("sig".equals(use)) {
-            logger.infof("No algorithm provided, defaulting to 'ES256' for signature use");
+            logger.debugf("No algorithm provided, defaulting to 'ES256' for signature use");
             return "ES256";
         }
 
-        logger.infof("No algorithm provided, defaulting to 'ECDH-ES+A256KW' for encryption use %s", use);
+        logger.debugf("No algorithm provided, defaulting to 'ECDH-ES+A256KW' for encryption use %s", use);
         return "ECDH-ES+A256KW";
     }
 
@@ -72,11 +75,11 @@ public class KeyUtil {
         try {
             var raw = model.getConfig().getFirst(CFG_JWK);
             if (raw == null || raw.isBlank()) {
-                logger.infof("No JWK found in component model with id %s", model.getId());
+                logger.debugf("No JWK found in component model with id %s", model.getId());
                 return null;
             }
 
-            logger.infof("Parsing JWK from component model with id %s \n%s", model.getId(), raw);
+            logger.debugf("Parsing JWK from component model with id %s", model.getId());
             var om = new ObjectMapper();
             var jwk = om.readTree(raw);
             if (!jwk.isObject()) {
@@ -98,7 +101,7 @@ public class KeyUtil {
             var d = jwk.path("d").asText();
             var alg = jwk.path("alg").asText();
             var kid = jwk.path("kid").asText();
-            logger.infof("Importing EC key (kid=%s, crv=%s) from component model with id %s", kid, crv, model.getId());
+            logger.debugf("Importing EC key (kid=%s, crv=%s) from component model with id %s", kid, crv, model.getId());
 
             // decide use
             var forced = model.getConfig().getFirst(CFG_USE);
@@ -107,20 +110,20 @@ public class KeyUtil {
                 case "enc" -> "enc";
                 default -> inferUseFromAlg(alg);
             };
-            logger.infof("Inferred key use '%s' for key (kid=%s) from component model with id %s", use, kid, model.getId());
+            logger.debugf("Inferred key use '%s' for key (kid=%s) from component model with id %s", use, kid, model.getId());
 
             PrivateKey prv = null;
             if (d != null && !d.isBlank()) {
-                logger.infof("Building EC private key (kid=%s) from JWK components", kid);
+                logger.debugf("Building EC private key (kid=%s) from JWK components", kid);
                 prv = toECPrivateKey(x, y, d, crv);
-                logger.infof("Successfully built EC private key (kid=%s) from JWK components", kid);
+                logger.debugf("Successfully built EC private key (kid=%s) from JWK components", kid);
             }
 
             PublicKey pub = null;
             if (x != null && !x.isBlank() && y != null && !y.isBlank()) {
-                logger.infof("Building EC public key (kid=%s) from JWK components", kid);
+                logger.debugf("Building EC public key (kid=%s) from JWK components", kid);
                 pub = toECPublicKey(x, y, crv);
-                logger.infof("Successfully built EC public key (kid=%s) from JWK components", kid);
+                logger.debugf("Successfully built EC public key (kid=%s) from JWK components", kid);
             }
 
             if (pub == null && prv == null) {
@@ -136,7 +139,7 @@ public class KeyUtil {
             w.setAlgorithm(algorithm);
             w.setStatus(KeyStatus.ACTIVE);
             w.setProviderId(model.getId());
-            logger.infof("Setting key provider ID to %s for key (kid=%s)", model.getId(), w.getKid());
+            logger.debugf("Setting key provider ID to %s for key (kid=%s)", model.getId(), w.getKid());
 
             try {
                 w.setProviderPriority(Integer.parseInt(model.getConfig().getFirst(CFG_PRIORITY)));
@@ -146,11 +149,11 @@ public class KeyUtil {
             }
 
             if (pub != null) {
-                logger.infof("Setting public key for key (kid=%s)", w.getKid());
+                logger.debugf("Setting public key for key (kid=%s)", w.getKid());
                 w.setPublicKey(pub);
             }
             if (prv != null) {
-                logger.infof("Setting private key for key (kid=%s)", w.getKid());
+                logger.debugf("Setting private key for key (kid=%s)", w.getKid());
                 w.setPrivateKey(prv);
             }
 
@@ -219,14 +222,24 @@ public class KeyUtil {
      * Get EC parameter spec for the given curve
      */
     static ECParameterSpec getECParameterSpec(String curveName) throws NoSuchAlgorithmException, InvalidParameterSpecException {
+        var cached = EC_PARAMETER_SPECS.get(curveName);
+        if (cached != null) {
+            return cached;
+        }
+        var spec = lookupECParameterSpec(curveName);
+        EC_PARAMETER_SPECS.putIfAbsent(curveName, spec);
+        return spec;
+    }
+
+    private static ECParameterSpec lookupECParameterSpec(String curveName) throws NoSuchAlgorithmException, InvalidParameterSpecException {
         // Map JWK curve names to Java standard names
         var javaStandardName = CURVE_NAME_MAPPING.getOrDefault(curveName, curveName);
-        logger.infof("Mapping curve name '%s' to Java standard name '%s'", curveName, javaStandardName);
+        logger.debugf("Mapping curve name '%s' to Java standard name '%s'", curveName, javaStandardName);
 
         try {
             var params = AlgorithmParameters.getInstance("EC");
             params.init(new ECGenParameterSpec(javaStandardName));
-            logger.infof("Successfully initialized curve with standard name '%s'", javaStandardName);
+            logger.debugf("Successfully initialized curve with standard name '%s'", javaStandardName);
 
             return params.getParameterSpec(ECParameterSpec.class);
         } catch (InvalidParameterSpecException e) {
@@ -236,7 +249,7 @@ public class KeyUtil {
             var alternativeNames = getAlternativeCurveNames(curveName);
             for (var altName : alternativeNames) {
                 try {
-                    logger.infof("Trying alternative curve name: '%s'", altName);
+                    logger.debugf("Trying alternative curve name: '%s'", altName);
                     var params = AlgorithmParameters.getInstance("EC");
                     params.init(new ECGenParameterSpec(altName));
                     return params.getParameterSpec(ECParameterSpec.class);
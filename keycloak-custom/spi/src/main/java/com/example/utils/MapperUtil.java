@@ -1,14 +1,18 @@
 package com.example.utils;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.apache.commons.lang3.StringUtils;
 import org.jboss.logging.Logger;
 import org.keycloak.broker.provider.BrokeredIdentityContext;
 import org.keycloak.models.UserModel;
 import org.keycloak.representations.AccessTokenResponse;
 import org.keycloak.representations.JsonWebToken;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
 
 public class MapperUtil {
     private static final Logger logger = Logger.getLogger(MapperUtil.class);
@@ -19,22 +23,79 @@ public class MapperUtil {
         // Private constructor to prevent instantiation
     }
 
-    public static void mapAttributeToUser(BrokeredIdentityContext context, UserModel user, boolean forceUpdate) {
-        for (var entry : context.getAttributes().entrySet()) {
+    /**
+     * Copy the brokered attributes to {@code user}, writing only what differs from the stored
+     * attributes. The stored attributes are loaded once; an attribute whose values are all
+     * {@code null} is removed rather than stored as a {@code null} row.
+     *
+     * @return the writes made, also logged once per login
+     */
+    public static AttributeDelta mapAttributeToUser(BrokeredIdentityContext context, UserModel user) {
+        return mapAttributeToUser(context, user, attrKey -> true);
+    }
+
+    /**
+     * Like {@link #mapAttributeToUser(BrokeredIdentityContext, UserModel)}, also removing the
+     * stored attributes that are not brokered this time and that {@code retain} rejects, e.g.
+     * attributes excluded since the user was first imported.
+     */
+    public static AttributeDelta mapAttributeToUser(BrokeredIdentityContext context, UserModel user, Predicate<String> retain) {
+        var delta = diff(user.getAttributes(), context.getAttributes(), retain);
+        delta.replaced().forEach((attrKey, attrValues) -> {
+            logger.debugf("[mapAttributeToUser] Updating attribute for user %s: %s = %s", user.getUsername(), attrKey, attrValues);
+            user.setAttribute(attrKey, attrValues);
+        });
+        delta.removed().forEach(attrKey -> {
+            logger.debugf("[mapAttributeToUser] Removing attribute %s for user %s", attrKey, user.getUsername());
+            user.removeAttribute(attrKey);
+        });
+        logger.infof("[mapAttributeToUser] User %s: %d attributes written, %d removed, %d unchanged",
+                user.getUsername(), delta.replaced().size(), delta.removed().size(), delta.unchanged());
+        return delta;
+    }
+
+    static AttributeDelta diff(Map<String, List<String>> current, Map<String, List<String>> incoming) {
+        return diff(current, incoming, attrKey -> true);
+    }
+
+    static AttributeDelta diff(Map<String, List<String>> current, Map<String, List<String>> incoming, Predicate<String> retain) {
+        var replaced = new LinkedHashMap<String, List<String>>();
+        var removed = new ArrayList<String>();
+        var unchanged = 0;
+        for (var entry : incoming.entrySet()) {
             var attrKey = entry.getKey();
-            var attrValues = entry.getValue();
-            var existingValues = user.getFirstAttribute(attrKey);
-            var isNeedToUpdate = existingValues == null
-                    || existingValues.isEmpty()
-                    || !StringUtils.equalsAny(existingValues, attrValues.toArray(CharSequence[]::new));
-            if (forceUpdate || isNeedToUpdate) {
-                logger.infof("[mapAttributeToUser] Updating attribute for user %s: %s = %s", user.getUsername(), attrKey, attrValues);
-                user.setAttribute(attrKey, attrValues);
+            var attrValues = entry.getValue() == null
+                    ? List.<String>of()
+                    : entry.getValue().stream().filter(Objects::nonNull).toList();
+            var existingValues = current.get(attrKey);
+            var exists = existingValues != null && !existingValues.isEmpty();
+            if (attrValues.isEmpty()) {
+                if (exists) {
+                    removed.add(attrKey);
+                } else {
+                    unchanged++;
+                }
+            } else if (exists && existingValues.equals(attrValues)) {
+                unchanged++;
             } else {
-                logger.infof("[mapAttributeToUser] No change for attribute %s for user %s", attrKey, user.getUsername());
+                replaced.put(attrKey, attrValues);
+            }
+        }
+        for (var attrKey : current.keySet()) {
+            if (!incoming.containsKey(attrKey) && !retain.test(attrKey)) {
+                removed.add(attrKey);
             }
         }
+        return new AttributeDelta(replaced, removed, unchanged);
     }
+
+    /**
+     * Attribute writes of one login: attributes added or replaced, attributes removed, and the
+     * number left untouched.
+     */
+    public record AttributeDelta(Map<String, List<String>> replaced, List<String> removed, int unchanged) {
+    }
+
     public static Map<String, String> toMap(JsonWebToken jsonWebToken) {
         if (jsonWebToken == null) {
             return new java.util.HashMap<>();
@@ -1,29 +1,195 @@
 package com.example.utils;
 
+import com.example.config.CustomOIDCIdentityProviderConfig;
 import org.jboss.logging.Logger;
-import org.keycloak.broker.oidc.OIDCIdentityProvider;
 import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background refresher for the JWKS of each custom OIDC identity provider, so that login
+ * requests never wait on a key fetch. The endpoints stay those configured on the provider.
+ * <p>
+ * Providers register themselves on construction. The first refresh runs immediately, later
+ * ones at {@link #REFRESH_AHEAD_RATIO} of the JWKS TTL so the new set is in {@link JwksCache}
+ * before the old one expires. When the IdP is unreachable the last known good copy keeps
+ * being served (stale-while-revalidate) and the refresh is retried with exponential backoff.
+ * A provider that is removed or disabled is dropped on its next scheduled run.
+ */
 public class MetadataRefresher {
-    private static final Logger LOG = Logger.getLogger(MetadataRefresher.class);
-
-    private volatile long lastFetch = 0;
-
-    public void refreshIfNeeded(KeycloakSession session, OIDCIdentityProvider idp, long ttlMillis) {
-//        var now = System.currentTimeMillis();
-//        if (now - lastFetch < ttlMillis)
-//            return;
-//        synchronized (this) {
-//            if (now - lastFetch < ttlMillis)
-//                return;
-//            try {
-//                // touch the provider metadata; OIDCIdentityProvider will (re)load as needed
-//                idp.updateMetadata(session);
-//                lastFetch = System.currentTimeMillis();
-//                LOG.debug("singpass idp metadata refreshed");
-//            } catch (Exception e) {
-//                LOG.warn("failed to refresh singpass idp metadata", e);
-//            }
-//        }
+    private static final Logger logger = Logger.getLogger(MetadataRefresher.class);
+
+    static final double REFRESH_AHEAD_RATIO = 0.8;
+    static final long MIN_DELAY_SECONDS = 30;
+    static final long MAX_RETRY_DELAY_SECONDS = 300;
+
+    private static final MetadataRefresher INSTANCE = new MetadataRefresher();
+
+    private final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    MetadataRefresher() {
+    }
+
+    public static MetadataRefresher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start refreshing metadata for the identity provider if it is not refreshed already.
+     * Cheap enough to call every time a provider instance is created.
+     */
+    public void register(KeycloakSession session, CustomOIDCIdentityProviderConfig config) {
+        var realm = session.getContext().getRealm();
+        if (realm == null || config.getAlias() == null) {
+            return;
+        }
+
+        var key = targetKey(realm.getId(), config.getAlias());
+        if (targets.containsKey(key)) {
+            return;
+        }
+        var target = new Target(session.getKeycloakSessionFactory(), realm.getId(), config.getAlias());
+        if (targets.putIfAbsent(key, target) == null) {
+            logger.infof("[register] Scheduling metadata refresh for idp %s in realm %s", config.getAlias(), realm.getName());
+            scheduler().execute(() -> run(target));
+        }
+    }
+
+    /**
+     * Stop all refreshes. A provider registering afterwards starts a new scheduler, so the
+     * refresher survives a factory being closed and created again.
+     */
+    public synchronized void shutdown() {
+        logger.info("[shutdown] Stopping metadata refresher");
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        targets.values().forEach(this::release);
+        targets.clear();
+    }
+
+    boolean isRefreshing(String realmId, String alias) {
+        return targets.containsKey(targetKey(realmId, alias));
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "oidc-metadata-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    private synchronized void schedule(Target target, long delay) {
+        // a target dropped by shutdown() must not start the next scheduler
+        if (targets.get(targetKey(target.realmId, target.alias)) == target) {
+            scheduler().schedule(() -> run(target), delay, TimeUnit.SECONDS);
+        }
+    }
+
+    private void run(Target target) {
+        long delay;
+        try {
+            delay = KeycloakModelUtils.runJobInTransactionWithResult(target.sessionFactory, session -> refresh(session, target));
+            target.failures.set(0);
+        } catch (Exception e) {
+            delay = retryDelay(target.failures.incrementAndGet());
+            logger.warnf(e, "[run] Metadata refresh failed for idp %s in realm %s (attempt %d), serving last known copy, retrying in %d s",
+                    target.alias, target.realmId, target.failures.get(), delay);
+        }
+
+        if (delay < 0) {
+            logger.infof("[run] Idp %s in realm %s is gone or disabled, stopping metadata refresh", target.alias, target.realmId);
+            targets.remove(targetKey(target.realmId, target.alias), target);
+            release(target);
+            return;
+        }
+        schedule(target, delay);
+    }
+
+    /**
+     * Refresh the JWKS, returning the delay in seconds until the next
+     * run, or {@code -1} when the provider no longer exists.
+     */
+    private long refresh(KeycloakSession session, Target target) {
+        var realm = session.realms().getRealm(target.realmId);
+        var model = realm != null ? realm.getIdentityProviderByAlias(target.alias) : null;
+        if (model == null || !model.isEnabled()) {
+            return -1;
+        }
+        session.getContext().setRealm(realm);
+        var config = new CustomOIDCIdentityProviderConfig(model);
+        var ttl = JwksCache.Ttl.of(config);
+
+        var jwksUrl = config.getJwksUrl();
+        if (!config.isUseJwksUrl() || jwksUrl == null || jwksUrl.isBlank()) {
+            target.jwksCacheKey.set(null);
+            return ttl.maxSeconds();
+        }
+
+        var cacheKey = JwksCache.cacheKey(target.realmId, jwksUrl);
+        var previousKey = target.jwksCacheKey.getAndSet(cacheKey);
+        if (previousKey != null && !previousKey.equals(cacheKey)) {
+            JwksCache.getInstance().unmanage(previousKey);
+        }
+        JwksCache.getInstance().manage(cacheKey);
+
+        try {
+            var cachedFor = JwksCache.getInstance().reload(cacheKey, ttl, () -> JwksCache.fetch(session, jwksUrl));
+            var delay = nextDelay(cachedFor);
+            logger.infof("[refresh] Refreshed JWKS for idp %s in realm %s, next refresh in %d s", target.alias, target.realmId, delay);
+            return delay;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to refresh JWKS from " + jwksUrl, e);
+        }
+    }
+
+    private void release(Target target) {
+        var cacheKey = target.jwksCacheKey.getAndSet(null);
+        if (cacheKey != null) {
+            JwksCache.getInstance().unmanage(cacheKey);
+        }
+    }
+
+    static long nextDelay(long ttlSeconds) {
+        return Math.max(MIN_DELAY_SECONDS, (long) (ttlSeconds * REFRESH_AHEAD_RATIO));
+    }
+
+    static long retryDelay(int failures) {
+        var shift = Math.min(Math.max(failures - 1, 0), 10);
+        return Math.min(MAX_RETRY_DELAY_SECONDS, MIN_DELAY_SECONDS << shift);
+    }
+
+    static String targetKey(String realmId, String alias) {
+        return realmId + "|" + alias;
+    }
+
+    private static final class Target {
+        private final KeycloakSessionFactory sessionFactory;
+        private final String realmId;
+        private final String alias;
+        private final AtomicReference<String> jwksCacheKey = new AtomicReference<>();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Target(KeycloakSessionFactory sessionFactory, String realmId, String alias) {
+            this.sessionFactory = sessionFactory;
+            this.realmId = realmId;
+            this.alias = alias;
+        }
     }
 }
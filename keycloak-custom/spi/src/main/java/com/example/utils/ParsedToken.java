@@ -0,0 +1,91 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import org.keycloak.jose.jws.JWSInput;
+import org.keycloak.jose.jws.JWSInputException;
+import org.keycloak.representations.JsonWebToken;
+import org.keycloak.util.JsonSerialization;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+/**
+ * A compact JWS that has been decoded once and is carried through decrypt, verify and
+ * validate. The header is parsed when the token is created, the payload bytes are decoded on
+ * first use and the claims are deserialised from those bytes at most once.
+ * <p>
+ * Not thread-safe; an instance belongs to the request that parsed the token.
+ */
+public final class ParsedToken {
+    private final String compact;
+    private final JWSObject jws;
+    private byte[] payload;
+    private JsonWebToken claims;
+
+    private ParsedToken(String compact, JWSObject jws) {
+        this.compact = compact;
+        this.jws = jws;
+    }
+
+    /**
+     * Parse a compact JWS. Throws {@link ParseException} when {@code compact} is not a JWS.
+     */
+    public static ParsedToken parse(String compact) throws ParseException {
+        return new ParsedToken(compact, JWSObject.parse(compact));
+    }
+
+    public static ParsedToken of(JWSObject jws) {
+        return new ParsedToken(jws.serialize(), jws);
+    }
+
+    /**
+     * Five segments in compact serialization mean a JWE (RFC 7516 section 9).
+     */
+    public static boolean isJwe(String compact) {
+        return CompactJose.classify(compact) == CompactJose.Type.JWE;
+    }
+
+    public static boolean isJws(String compact) {
+        return CompactJose.classify(compact) == CompactJose.Type.JWS;
+    }
+
+    public JWSHeader getHeader() {
+        return jws.getHeader();
+    }
+
+    public JWSObject getJwsObject() {
+        return jws;
+    }
+
+    public String getCompact() {
+        return compact;
+    }
+
+    public byte[] getPayload() {
+        if (payload == null) {
+            payload = jws.getPayload().toBytes();
+        }
+        return payload;
+    }
+
+    public String getPayloadString() {
+        return new String(getPayload(), StandardCharsets.UTF_8);
+    }
+
+    public JsonWebToken getClaims() throws IOException {
+        if (claims == null) {
+            claims = JsonSerialization.readValue(getPayload(), JsonWebToken.class);
+        }
+        return claims;
+    }
+
+    /**
+     * Keycloak representation of the same token, for the realm key-store verification path.
+     * This decodes the token again, so only use it where a {@link JWSInput} is required.
+     */
+    public JWSInput toJwsInput() throws JWSInputException {
+        return new JWSInput(getCompact());
+    }
+}
@@ -1,23 +1,25 @@
 package com.example.utils;
 
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JOSEObjectType;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
 import com.nimbusds.jose.crypto.ECDSASigner;
 import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jwt.JWTClaimsSet;
-import com.nimbusds.jwt.SignedJWT;
 import org.jboss.logging.Logger;
 import org.keycloak.broker.provider.util.SimpleHttp;
 
-import java.time.Instant;
-import java.util.Date;
-import java.util.UUID;
+import java.util.LinkedHashMap;
 
 public class PrivateKeyJwtClientAuthenticator {
     private static final Logger logger = Logger.getLogger(PrivateKeyJwtClientAuthenticator.class);
 
+    private static final long ASSERTION_LIFETIME_SECONDS = 300;
+
     private final JWK privateSigJwk;
+    private JWSSigner signer;
+    private volatile Assertions assertions;
 
     public PrivateKeyJwtClientAuthenticator(String privateSigJwkJson) {
         this.privateSigJwk = JwkUtils.parsePrivateJwk(privateSigJwkJson);
@@ -27,30 +29,40 @@ public class PrivateKeyJwtClientAuthenticator {
         if (privateSigJwk == null) {
             throw new IllegalStateException("private signing JWK is required for private_key_jwt");
         }
-        var signer = new ECDSASigner(privateSigJwk.toECKey().toECPrivateKey());
-        var header = new JWSHeader.Builder(JWSAlgorithm.ES256)
-                .keyID(privateSigJwk.getKeyID())
-                .type(JOSEObjectType.JWT)
-                .build();
-        var now = Instant.now().getEpochSecond();
-        var claims = new JWTClaimsSet.Builder()
-                .issuer(clientId)
-                .subject(clientId)
-                .audience(tokenEndpoint)
-                .expirationTime(Date.from(Instant.ofEpochSecond(now + 300)))
-                .issueTime(Date.from(Instant.ofEpochSecond(now)))
-                .jwtID(UUID.randomUUID().toString())
-                .build();
-        var jwt = new SignedJWT(header, claims);
-        jwt.sign(signer);
-        var assertion = jwt.serialize();
+        var assertion = assertions(tokenEndpoint, clientId).sign();
         logger.infof("generated client assertion JWT with kid=%s", privateSigJwk.getKeyID());
-        logger.infof("client assertion JWT claims: %s", claims.toString());
-        logger.infof("client assertion JWT: %s", assertion);
         logger.infof("client id: %s", clientId);
 
         tokenReq.param("client_assertion_type", "urn:ietf:params:oauth:client-assertion-type:jwt-bearer");
         tokenReq.param("client_assertion", assertion);
         tokenReq.param("client_id", clientId);
     }
+
+    /**
+     * Assertion service for the endpoint and client, rebuilt only when either changes. The
+     * signer is created on first use and reused.
+     */
+    private synchronized ClientAssertionService assertions(String tokenEndpoint, String clientId) throws JOSEException {
+        var current = assertions;
+        if (current != null && current.tokenEndpoint().equals(tokenEndpoint) && current.clientId().equals(clientId)) {
+            return current.service();
+        }
+        if (signer == null) {
+            signer = new ECDSASigner(privateSigJwk.toECKey().toECPrivateKey());
+        }
+        var header = new JWSHeader.Builder(JWSAlgorithm.ES256)
+                .keyID(privateSigJwk.getKeyID())
+                .type(JOSEObjectType.JWT)
+                .build();
+        var claims = new LinkedHashMap<String, Object>();
+        claims.put("iss", clientId);
+        claims.put("sub", clientId);
+        claims.put("aud", tokenEndpoint);
+        var service = new ClientAssertionService(header, signer, claims, ASSERTION_LIFETIME_SECONDS, 0);
+        assertions = new Assertions(tokenEndpoint, clientId, service);
+        return service;
+    }
+
+    private record Assertions(String tokenEndpoint, String clientId, ClientAssertionService service) {
+    }
 }
@@ -0,0 +1,150 @@
+package com.example.utils;
+
+import org.jboss.logging.Logger;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.util.Collections;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Serialised JSON Web Key Set per realm, as served by the custom certs endpoint. The document
+ * is rebuilt only when the fingerprint of the realm keys changes, so a poll costs a pass over
+ * the key metadata instead of JWK encoding and JSON serialisation.
+ * <p>
+ * The fingerprint is a SHA-256 over provider, kid, status, type, algorithm, use, public key
+ * and certificate chain of every key, which catches rotations, status changes, renewed
+ * certificates and keys added by another cluster node without relying on admin events.
+ */
+public class PublishedJwksCache {
+    private static final Logger logger = Logger.getLogger(PublishedJwksCache.class);
+
+    private static final PublishedJwksCache INSTANCE = new PublishedJwksCache();
+
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+    PublishedJwksCache() {
+    }
+
+    public static PublishedJwksCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Current document for {@code realmId}, building it with {@code builder} when the keys
+     * have changed since it was last built.
+     */
+    public Document get(String realmId, Stream<KeyWrapper> keys, Supplier<byte[]> builder) {
+        return get(realmId, fingerprint(keys), builder);
+    }
+
+    Document get(String realmId, String fingerprint, Supplier<byte[]> builder) {
+        var document = documents.get(realmId);
+        if (document != null && document.fingerprint().equals(fingerprint)) {
+            return document;
+        }
+        var body = builder.get();
+        document = new Document(fingerprint, body, etag(body));
+        documents.put(realmId, document);
+        logger.debugf("[get] Rebuilt JWKS for realm %s, etag %s", realmId, document.etag());
+        return document;
+    }
+
+    public void invalidate(String realmId) {
+        documents.remove(realmId);
+    }
+
+    /**
+     * SHA-256 over every key's provider, kid, status, type, algorithm, use, encoded public key
+     * and encoded certificate chain (the single certificate when there is no chain, as the
+     * endpoint publishes it in {@code x5c}). Fields are length-prefixed so adjacent values
+     * cannot run into each other.
+     */
+    static String fingerprint(Stream<KeyWrapper> keys) {
+        var digest = sha256();
+        keys.forEach(key -> {
+            update(digest, key.getProviderId());
+            update(digest, key.getKid());
+            update(digest, key.getStatus() != null ? key.getStatus().name() : null);
+            update(digest, key.getType());
+            update(digest, key.getAlgorithmOrDefault());
+            update(digest, key.getUse() != null ? key.getUse().name() : null);
+            update(digest, key.getPublicKey() != null ? key.getPublicKey().getEncoded() : null);
+            var chain = key.getCertificateChain() != null && !key.getCertificateChain().isEmpty()
+                    ? key.getCertificateChain()
+                    : Collections.singletonList(key.getCertificate());
+            digest.update(intBytes(chain.size()));
+            for (var certificate : chain) {
+                try {
+                    update(digest, certificate != null ? certificate.getEncoded() : null);
+                } catch (CertificateEncodingException e) {
+                    throw new IllegalStateException("Unable to encode certificate of key " + key.getKid(), e);
+                }
+            }
+        });
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        update(digest, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void update(MessageDigest digest, byte[] value) {
+        digest.update(intBytes(value != null ? value.length : -1));
+        if (value != null) {
+            digest.update(value);
+        }
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    static String etag(byte[] body) {
+        return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(sha256().digest(body)) + "\"";
+    }
+
+    /**
+     * Serialised key set and its strong entity tag, quoted as sent in the {@code ETag} header.
+     */
+    public record Document(String fingerprint, byte[] body, String etag) {
+
+        /**
+         * Whether an {@code If-None-Match} header value matches this document (RFC 9110
+         * section 13.1.2, weak comparison).
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+                return false;
+            }
+            for (var candidate : ifNoneMatch.split(",")) {
+                var tag = candidate.trim();
+                if (tag.equals("*")) {
+                    return true;
+                }
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.utils;
+
+import org.keycloak.dom.saml.v2.assertion.AssertionType;
+import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
+import org.keycloak.dom.saml.v2.assertion.AttributeType;
+import org.keycloak.dom.saml.v2.assertion.AudienceRestrictionType;
+import org.keycloak.dom.saml.v2.assertion.AuthnStatementType;
+import org.keycloak.dom.saml.v2.assertion.NameIDType;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Extracts the user-relevant parts of a SAML assertion: attribute statements, the subject
+ * NameID, the AuthnStatement and the Conditions. Values are read from the assertion Keycloak
+ * has already parsed (and decrypted), so nothing is parsed or walked twice.
+ * <p>
+ * Attributes are keyed by their SAML {@code Name}, or renamed through an attribute mapping of
+ * {@code SamlName=userAttribute} pairs separated by {@code ;}. With a mapping, only the
+ * mapped attributes are extracted. The other parts use the fixed {@code saml.*} keys below.
+ */
+public final class SamlAttributeExtractor {
+    public static final String NAME_ID = "saml.nameId";
+    public static final String NAME_ID_FORMAT = "saml.nameIdFormat";
+    public static final String SESSION_INDEX = "saml.sessionIndex";
+    public static final String AUTHN_INSTANT = "saml.authnInstant";
+    public static final String AUTHN_CONTEXT_CLASS_REF = "saml.authnContextClassRef";
+    public static final String NOT_BEFORE = "saml.notBefore";
+    public static final String NOT_ON_OR_AFTER = "saml.notOnOrAfter";
+    public static final String AUDIENCE = "saml.audience";
+
+    static final int MAX_MAPPINGS = 64;
+
+    private static final ConcurrentMap<String, Map<String, String>> MAPPINGS = new ConcurrentHashMap<>();
+
+    private SamlAttributeExtractor() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Extracted values by user attribute name, in document order.
+     */
+    public static Map<String, List<String>> extract(AssertionType assertion, NameIDType subjectNameID, String attributeMapping) {
+        var mapping = mapping(attributeMapping);
+        var result = new LinkedHashMap<String, List<String>>();
+        if (assertion == null) {
+            return result;
+        }
+
+        if (subjectNameID != null) {
+            put(result, NAME_ID, subjectNameID.getValue());
+            put(result, NAME_ID_FORMAT, subjectNameID.getFormat());
+        }
+        var conditions = assertion.getConditions();
+        if (conditions != null) {
+            put(result, NOT_BEFORE, conditions.getNotBefore());
+            put(result, NOT_ON_OR_AFTER, conditions.getNotOnOrAfter());
+            for (var condition : conditions.getConditions()) {
+                if (condition instanceof AudienceRestrictionType audienceRestriction) {
+                    for (var audience : audienceRestriction.getAudience()) {
+                        put(result, AUDIENCE, audience);
+                    }
+                }
+            }
+        }
+
+        for (var statement : assertion.getStatements()) {
+            if (statement instanceof AttributeStatementType attributeStatement) {
+                for (var choice : attributeStatement.getAttributes()) {
+                    var attribute = choice.getAttribute();
+                    if (attribute != null) {
+                        extractAttribute(attribute, mapping, result);
+                    }
+                }
+            } else if (statement instanceof AuthnStatementType authn) {
+                put(result, SESSION_INDEX, authn.getSessionIndex());
+                put(result, AUTHN_INSTANT, authn.getAuthnInstant());
+                var context = authn.getAuthnContext();
+                if (context != null && context.getSequence() != null && context.getSequence().getClassRef() != null) {
+                    put(result, AUTHN_CONTEXT_CLASS_REF, context.getSequence().getClassRef().getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void extractAttribute(AttributeType attribute, Map<String, String> mapping, Map<String, List<String>> result) {
+        var name = attribute.getName();
+        if (name == null) {
+            return;
+        }
+        var key = mapping.isEmpty() ? name : mapping.get(name);
+        if (key == null) {
+            return;
+        }
+        for (var value : attribute.getAttributeValue()) {
+            if (value instanceof Node node) {
+                put(result, key, node.getTextContent());
+            } else if (value instanceof NameIDType nameID) {
+                put(result, key, nameID.getValue());
+            } else {
+                put(result, key, value);
+            }
+        }
+    }
+
+    private static void put(Map<String, List<String>> result, String key, Object value) {
+        if (value != null) {
+            result.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value.toString());
+        }
+    }
+
+    /**
+     * Parse {@code SamlName=userAttribute;...}, throwing {@link IllegalArgumentException} on a
+     * malformed pair. Blank means no mapping.
+     */
+    public static Map<String, String> mapping(String attributeMapping) {
+        if (attributeMapping == null || attributeMapping.isBlank()) {
+            return Map.of();
+        }
+        var mapping = MAPPINGS.get(attributeMapping);
+        if (mapping != null) {
+            return mapping;
+        }
+
+        var parsed = new LinkedHashMap<String, String>();
+        for (var pair : attributeMapping.split(";")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            var separator = pair.indexOf('=');
+            var samlName = separator < 0 ? "" : pair.substring(0, separator).trim();
+            var userAttribute = separator < 0 ? "" : pair.substring(separator + 1).trim();
+            if (samlName.isEmpty() || userAttribute.isEmpty()) {
+                throw new IllegalArgumentException("expected SamlName=userAttribute but got '" + pair.trim() + "'");
+            }
+            parsed.put(samlName, userAttribute);
+        }
+        mapping = Map.copyOf(parsed);
+        if (MAPPINGS.size() >= MAX_MAPPINGS) {
+            MAPPINGS.clear();
+        }
+        MAPPINGS.put(attributeMapping, mapping);
+        return mapping;
+    }
+}
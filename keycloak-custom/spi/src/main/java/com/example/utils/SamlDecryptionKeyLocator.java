@@ -0,0 +1,141 @@
+package com.example.utils;
+
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.jboss.logging.Logger;
+import org.keycloak.common.util.DerUtils;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.keycloak.protocol.saml.SAMLDecryptionKeysLocator;
+import org.keycloak.protocol.saml.SAMLEncryptionAlgorithms;
+import org.keycloak.saml.processing.core.util.XMLEncryptionUtil;
+
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Decryption key locator for encrypted SAML assertions and NameIDs, with the same key
+ * selection as Keycloak's {@link SAMLDecryptionKeysLocator}: enabled ENC keys of the realm for
+ * the key transport algorithm of the {@code EncryptedKey}, optionally restricted to the IdP's
+ * configured encryption algorithm and to the {@code KeyName}s of the key info.
+ * <p>
+ * Keys come from {@link DecryptionKeyIndex}, so the realm keys are enumerated once per index
+ * and not at every decryption, and are decoded into private keys once per realm and algorithm.
+ * The decoded set is reused for as long as the index hands out the same candidate list, which
+ * ties it to the index's invalidation on key component changes. One locator is meant to serve
+ * every decryption of a single response.
+ */
+public class SamlDecryptionKeyLocator implements XMLEncryptionUtil.DecryptionKeyLocator {
+    private static final Logger logger = Logger.getLogger(SamlDecryptionKeyLocator.class);
+
+    static final int MAX_KEY_SETS = 64;
+
+    private static final ConcurrentMap<String, KeySet> KEY_SETS = new ConcurrentHashMap<>();
+
+    private final KeycloakSession session;
+    private final RealmModel realm;
+    private final String requestedAlgorithm;
+    private final Map<String, KeySet> resolved = new HashMap<>(2);
+
+    public SamlDecryptionKeyLocator(KeycloakSession session, RealmModel realm, String requestedAlgorithm) {
+        this.session = session;
+        this.realm = realm;
+        this.requestedAlgorithm = requestedAlgorithm == null || requestedAlgorithm.isBlank() ? null : requestedAlgorithm.trim();
+    }
+
+    @Override
+    public List<PrivateKey> getKeys(EncryptedData encryptedData) {
+        var keyInfo = encryptedData.getKeyInfo();
+        if (keyInfo == null) {
+            throw new IllegalStateException("EncryptedData does not contain KeyInfo");
+        }
+
+        String algorithm;
+        List<String> keyNames = null;
+        try {
+            var encryptedKey = keyInfo.itemEncryptedKey(0);
+            if (encryptedKey == null) {
+                algorithm = requestedAlgorithm;
+            } else {
+                var encryptionMethod = encryptedKey.getEncryptionMethod();
+                if (encryptionMethod == null || encryptionMethod.getAlgorithm() == null) {
+                    throw new IllegalArgumentException("KeyInfo does not contain encryption method");
+                }
+                var usedAlgorithm = SAMLEncryptionAlgorithms.forXMLEncIdentifier(encryptionMethod.getAlgorithm());
+                if (usedAlgorithm == null) {
+                    throw new IllegalStateException("Keycloak does not support encryption keys for given algorithm: "
+                            + encryptionMethod.getAlgorithm());
+                }
+                algorithm = usedAlgorithm.getKeycloakIdentifier();
+            }
+            if (keyInfo.containsKeyName()) {
+                keyNames = new ArrayList<>(keyInfo.lengthKeyName());
+                for (var i = 0; i < keyInfo.lengthKeyName(); i++) {
+                    var keyName = keyInfo.itemKeyName(i);
+                    if (keyName != null) {
+                        keyNames.add(keyName.getKeyName());
+                    }
+                }
+            }
+        } catch (XMLSecurityException e) {
+            throw new IllegalArgumentException("EncryptedData does not contain KeyInfo ", e);
+        }
+
+        if (algorithm == null) {
+            // neither the data nor the IdP names an algorithm, so any ENC key qualifies
+            return new SAMLDecryptionKeysLocator(session, realm, null).getKeys(encryptedData);
+        }
+        if (requestedAlgorithm != null && !requestedAlgorithm.equals(algorithm)) {
+            return List.of();
+        }
+
+        var keySet = resolved.computeIfAbsent(algorithm, this::keySet);
+        if (keyNames == null) {
+            return keySet.privateKeys();
+        }
+        var keys = new ArrayList<PrivateKey>(keyNames.size());
+        for (var i = 0; i < keySet.kids().size(); i++) {
+            if (keyNames.contains(keySet.kids().get(i))) {
+                keys.add(keySet.privateKeys().get(i));
+            }
+        }
+        return keys;
+    }
+
+    private KeySet keySet(String algorithm) {
+        var candidates = DecryptionKeyIndex.getInstance().getCandidatesByAlgorithm(session, realm, algorithm);
+        var cacheKey = realm.getId() + "|" + DecryptionKeyIndex.normalize(algorithm);
+        var keySet = KEY_SETS.get(cacheKey);
+        if (keySet != null && keySet.source() == candidates) {
+            return keySet;
+        }
+
+        var kids = new ArrayList<String>(candidates.size());
+        var privateKeys = new ArrayList<PrivateKey>(candidates.size());
+        for (KeyWrapper key : candidates) {
+            try {
+                privateKeys.add(DerUtils.decodePrivateKey(key.getPrivateKey().getEncoded()));
+                kids.add(key.getKid());
+            } catch (Exception e) {
+                throw new RuntimeException("Could not decode private key.", e);
+            }
+        }
+        keySet = new KeySet(candidates, Collections.unmodifiableList(kids), List.copyOf(privateKeys));
+        if (KEY_SETS.size() >= MAX_KEY_SETS) {
+            KEY_SETS.clear();
+        }
+        KEY_SETS.put(cacheKey, keySet);
+        logger.debugf("[keySet] Decoded %d %s decryption keys for realm %s", privateKeys.size(), algorithm, realm.getName());
+        return keySet;
+    }
+
+    private record KeySet(List<KeyWrapper> source, List<String> kids, List<PrivateKey> privateKeys) {
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.utils;
+
+import com.example.config.CustomSAMLIdentityProviderConfig;
+import org.jboss.logging.Logger;
+import org.keycloak.connections.httpclient.HttpClientProvider;
+import org.keycloak.dom.saml.v2.metadata.EntityDescriptorType;
+import org.keycloak.dom.saml.v2.metadata.KeyTypes;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.utils.KeycloakModelUtils;
+import org.keycloak.rotation.KeyLocator;
+import org.keycloak.saml.processing.core.saml.v2.util.SAMLMetadataUtil;
+import org.w3c.dom.Element;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background refresher for the metadata descriptor of each custom SAML identity provider that
+ * has {@code useMetadataDescriptorUrl} on, so that a certificate rollover at the IdP is picked
+ * up before the first login signed with the new key.
+ * <p>
+ * Providers register themselves on construction. The first refresh runs immediately, later
+ * ones at {@link #REFRESH_AHEAD_RATIO} of the time left until the descriptor's
+ * {@code validUntil} or {@code cacheDuration} runs out, and no later than the next certificate
+ * in it expires or becomes valid or the IdP's maximum refresh interval
+ * ({@link #DEFAULT_REFRESH_SECONDS} unless configured) has passed. Each refresh builds the
+ * signing and encryption key sets from the certificates valid at that time and swaps them in
+ * together, tagged with the URL they came from; they are only served while that is still the
+ * configured URL. When the IdP is unreachable the last known good keys keep being served and
+ * the refresh is retried with exponential backoff. A provider that is removed, disabled or no
+ * longer uses the metadata URL is dropped on its next run.
+ */
+public class SamlMetadataRefresher {
+    private static final Logger logger = Logger.getLogger(SamlMetadataRefresher.class);
+
+    static final double REFRESH_AHEAD_RATIO = 0.8;
+    static final long MIN_DELAY_SECONDS = 30;
+    public static final long DEFAULT_REFRESH_SECONDS = 3600;
+
+    private static final SamlMetadataRefresher INSTANCE = new SamlMetadataRefresher();
+
+    private final ConcurrentMap<String, Target> targets = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    private SamlMetadataRefresher() {
+    }
+
+    public static SamlMetadataRefresher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start refreshing the metadata of the identity provider if it uses a metadata descriptor
+     * URL and is not refreshed already. Cheap enough to call every time a provider instance is
+     * created.
+     */
+    public void register(KeycloakSession session, CustomSAMLIdentityProviderConfig config) {
+        var realm = session.getContext().getRealm();
+        if (realm == null || config.getAlias() == null || !usesMetadata(config)) {
+            return;
+        }
+
+        var key = MetadataRefresher.targetKey(realm.getId(), config.getAlias());
+        if (targets.containsKey(key)) {
+            return;
+        }
+        var target = new Target(session.getKeycloakSessionFactory(), realm.getId(), config.getAlias());
+        if (targets.putIfAbsent(key, target) == null) {
+            logger.infof("[register] Scheduling SAML metadata refresh for idp %s in realm %s", config.getAlias(), realm.getName());
+            scheduler().execute(() -> run(target));
+        }
+    }
+
+    /**
+     * Signing keys from the last successfully fetched descriptor, or {@code null} if none has
+     * been fetched yet from the currently configured metadata URL.
+     */
+    public KeyLocator getSigningKeyLocator(String realmId, CustomSAMLIdentityProviderConfig config) {
+        var keys = keys(realmId, config);
+        return keys != null ? keys.signing() : null;
+    }
+
+    /**
+     * Encryption keys from the last successfully fetched descriptor, or {@code null} if none
+     * has been fetched yet from the currently configured metadata URL.
+     */
+    public KeyLocator getEncryptionKeyLocator(String realmId, CustomSAMLIdentityProviderConfig config) {
+        var keys = keys(realmId, config);
+        return keys != null ? keys.encryption() : null;
+    }
+
+    /**
+     * Stop all refreshes. A provider registering afterwards starts a new scheduler.
+     */
+    public synchronized void shutdown() {
+        logger.info("[shutdown] Stopping SAML metadata refresher");
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        targets.clear();
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                var thread = new Thread(runnable, "saml-metadata-refresher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    private synchronized void schedule(Target target, long delay) {
+        // a target dropped by shutdown() must not start the next scheduler
+        if (targets.get(MetadataRefresher.targetKey(target.realmId, target.alias)) == target) {
+            target.next.set(scheduler().schedule(() -> run(target), delay, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * Keys of the target if they were fetched from the configured URL. Keys from a URL the
+     * admin has since replaced are never served, and the target is refreshed right away.
+     */
+    private MetadataKeys keys(String realmId, CustomSAMLIdentityProviderConfig config) {
+        var target = targets.get(MetadataRefresher.targetKey(realmId, config.getAlias()));
+        var keys = target != null ? target.keys.get() : null;
+        if (keys == null) {
+            return null;
+        }
+        if (!keys.url().equals(config.getMetadataDescriptorUrl())) {
+            refreshNow(target);
+            return null;
+        }
+        return keys;
+    }
+
+    private void refreshNow(Target target) {
+        // only the caller that cancels the pending run starts the replacement, so the target
+        // keeps a single chain of runs; while a run is in flight it reads the new URL itself
+        var pending = target.next.getAndSet(null);
+        if (pending != null && pending.cancel(false)) {
+            logger.infof("[refreshNow] Metadata URL of idp %s in realm %s changed, refreshing now", target.alias, target.realmId);
+            scheduler().execute(() -> run(target));
+        }
+    }
+
+    private void run(Target target) {
+        long delay;
+        try {
+            delay = KeycloakModelUtils.runJobInTransactionWithResult(target.sessionFactory, session -> refresh(session, target));
+            target.failures.set(0);
+        } catch (Exception e) {
+            delay = MetadataRefresher.retryDelay(target.failures.incrementAndGet());
+            logger.warnf(e, "[run] SAML metadata refresh failed for idp %s in realm %s (attempt %d), serving last known keys, retrying in %d s",
+                    target.alias, target.realmId, target.failures.get(), delay);
+        }
+
+        if (delay < 0) {
+            logger.infof("[run] Idp %s in realm %s is gone, disabled or not using metadata, stopping SAML metadata refresh",
+                    target.alias, target.realmId);
+            targets.remove(MetadataRefresher.targetKey(target.realmId, target.alias), target);
+            return;
+        }
+        schedule(target, delay);
+    }
+
+    /**
+     * Fetch and parse the descriptor and swap in its keys, returning the delay in seconds
+     * until the next run, or {@code -1} when the provider no longer uses the metadata URL.
+     */
+    private long refresh(KeycloakSession session, Target target) {
+        var realm = session.realms().getRealm(target.realmId);
+        var model = realm != null ? realm.getIdentityProviderByAlias(target.alias) : null;
+        if (model == null || !model.isEnabled()) {
+            return -1;
+        }
+        var config = new CustomSAMLIdentityProviderConfig(model);
+        if (!usesMetadata(config)) {
+            return -1;
+        }
+
+        var url = config.getMetadataDescriptorUrl();
+        var now = System.currentTimeMillis();
+        EntityDescriptorType descriptor;
+        MetadataKeys keys;
+        try {
+            logger.infof("[refresh] HTTP Request ---> %s", url);
+            descriptor = SAMLMetadataUtil.parseEntityDescriptorType(session.getProvider(HttpClientProvider.class).getString(url));
+            keys = build(url, descriptor, now);
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to refresh SAML metadata from " + url, e);
+        }
+        target.keys.set(keys);
+        var delay = nextDelay(now, validUntil(descriptor), cacheDuration(descriptor, now), keys.rebuildAt(),
+                config.getMetadataRefreshMaxSeconds());
+        logger.infof("[refresh] Refreshed SAML metadata for idp %s in realm %s (%s, %s), next refresh in %d s",
+                target.alias, target.realmId, keys.signing(), keys.encryption(), delay);
+        return delay;
+    }
+
+    /**
+     * Key sets of the IDPSSODescriptor fetched from {@code url} that are valid at {@code now}.
+     * A key descriptor without
+     * a {@code use} goes into both sets. Keys are named like Keycloak's own metadata loader
+     * does: by the {@code KeyName} of the key info, else by the certificate subject.
+     */
+    static MetadataKeys build(String url, EntityDescriptorType descriptor, long now) throws Exception {
+        var signing = new LinkedHashMap<String, Key>();
+        var encryption = new LinkedHashMap<String, Key>();
+        var rebuildAt = Long.MAX_VALUE;
+        var idpDescriptor = SAMLMetadataUtil.locateIDPSSODescriptorType(descriptor);
+        if (idpDescriptor != null) {
+            for (var keyDescriptor : idpDescriptor.getKeyDescriptor()) {
+                var certificate = SAMLMetadataUtil.getCertificate(keyDescriptor);
+                if (certificate == null) {
+                    continue;
+                }
+                var notBefore = certificate.getNotBefore().getTime();
+                var notAfter = certificate.getNotAfter().getTime();
+                if (now < notBefore) {
+                    rebuildAt = Math.min(rebuildAt, notBefore);
+                    continue;
+                } else if (now > notAfter) {
+                    logger.warnf("[build] Ignoring expired metadata certificate: %s", certificate.getSubjectX500Principal());
+                    continue;
+                }
+                rebuildAt = Math.min(rebuildAt, notAfter + 1);
+
+                var kid = keyName(keyDescriptor.getKeyInfo());
+                if (kid == null) {
+                    kid = certificate.getSubjectX500Principal().getName();
+                }
+                var use = keyDescriptor.getUse();
+                if (use == null || use == KeyTypes.SIGNING) {
+                    signing.putIfAbsent(kid, certificate.getPublicKey());
+                }
+                if (use == null || use == KeyTypes.ENCRYPTION) {
+                    encryption.putIfAbsent(kid, certificate.getPublicKey());
+                }
+            }
+        }
+        return new MetadataKeys(url, new SnapshotKeyLocator(signing), new SnapshotKeyLocator(encryption), rebuildAt);
+    }
+
+    private static String keyName(Element keyInfo) {
+        if (keyInfo == null) {
+            return null;
+        }
+        for (var child = keyInfo.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ("KeyName".equals(child.getLocalName())) {
+                var name = child.getTextContent().trim();
+                return name.isEmpty() ? null : name;
+            }
+        }
+        return null;
+    }
+
+    private static long validUntil(EntityDescriptorType descriptor) {
+        var validUntil = descriptor.getValidUntil();
+        return validUntil != null ? validUntil.toGregorianCalendar().getTimeInMillis() : Long.MAX_VALUE;
+    }
+
+    private static long cacheDuration(EntityDescriptorType descriptor, long now) {
+        var cacheDuration = descriptor.getCacheDuration();
+        return cacheDuration != null ? cacheDuration.getTimeInMillis(new Date(now)) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Seconds until the next refresh of a descriptor fetched at {@code now}: ahead of
+     * {@code validUntil} and {@code cacheDuration} (both {@link Long#MAX_VALUE} when absent),
+     * no later than {@code rebuildAt}, the next certificate validity boundary, and at most
+     * {@code maxSeconds}.
+     */
+    static long nextDelay(long now, long validUntil, long cacheDurationMillis, long rebuildAt, long maxSeconds) {
+        var lifetime = Math.min(validUntil == Long.MAX_VALUE ? Long.MAX_VALUE : validUntil - now, cacheDurationMillis);
+        var delay = lifetime == Long.MAX_VALUE
+                ? maxSeconds
+                : Math.min(maxSeconds, (long) (TimeUnit.MILLISECONDS.toSeconds(lifetime) * REFRESH_AHEAD_RATIO));
+        if (rebuildAt != Long.MAX_VALUE) {
+            delay = Math.min(delay, TimeUnit.MILLISECONDS.toSeconds(rebuildAt - now) + 1);
+        }
+        return Math.max(MIN_DELAY_SECONDS, delay);
+    }
+
+    private static boolean usesMetadata(CustomSAMLIdentityProviderConfig config) {
+        var url = config.getMetadataDescriptorUrl();
+        return config.isUseMetadataDescriptorUrl() && url != null && !url.isBlank();
+    }
+
+    record MetadataKeys(String url, KeyLocator signing, KeyLocator encryption, long rebuildAt) {
+    }
+
+    /**
+     * Keys of one descriptor. Unlike {@code HardcodedKeyLocator} a lookup by name or key only
+     * answers on an exact match, so a signature by a key the IdP rotated in since the last
+     * refresh falls through to the next locator instead of failing on the old key.
+     */
+    private static final class SnapshotKeyLocator implements KeyLocator {
+        private final Map<String, Key> byName;
+
+        private SnapshotKeyLocator(Map<String, Key> byName) {
+            this.byName = byName;
+        }
+
+        @Override
+        public Key getKey(String kid) {
+            return kid != null ? byName.get(kid) : null;
+        }
+
+        @Override
+        public void refreshKeyCache() {
+            // replaced as a whole by the next refresh
+        }
+
+        @Override
+        public Iterator<Key> iterator() {
+            return byName.values().iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "metadata keys, count: " + byName.size();
+        }
+    }
+
+    private static final class Target {
+        private final KeycloakSessionFactory sessionFactory;
+        private final String realmId;
+        private final String alias;
+        private final AtomicReference<MetadataKeys> keys = new AtomicReference<>();
+        private final AtomicReference<ScheduledFuture<?>> next = new AtomicReference<>();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private Target(KeycloakSessionFactory sessionFactory, String realmId, String alias) {
+            this.sessionFactory = sessionFactory;
+            this.realmId = realmId;
+            this.alias = alias;
+        }
+    }
+}
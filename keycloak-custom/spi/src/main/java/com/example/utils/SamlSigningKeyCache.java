@@ -0,0 +1,96 @@
+package com.example.utils;
+
+import org.jboss.logging.Logger;
+import org.keycloak.rotation.HardcodedKeyLocator;
+import org.keycloak.rotation.KeyLocator;
+import org.keycloak.saml.common.exceptions.ProcessingException;
+import org.keycloak.saml.processing.core.util.XMLSignatureUtil;
+
+import java.security.Key;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Key locators for the signing certificates configured on a SAML IdP, kept per IdP internal
+ * id. Certificates are parsed once per configuration; a locator holds the certificates valid
+ * when it was built and is rebuilt from the parsed certificates when the next validity
+ * boundary (a certificate expiring or becoming valid) has passed, or when the configured
+ * certificates change.
+ */
+public class SamlSigningKeyCache {
+    private static final Logger logger = Logger.getLogger(SamlSigningKeyCache.class);
+
+    private static final SamlSigningKeyCache INSTANCE = new SamlSigningKeyCache(System::currentTimeMillis, SamlSigningKeyCache::parse);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final CertificateParser parser;
+
+    SamlSigningKeyCache(LongSupplier clock, CertificateParser parser) {
+        this.clock = clock;
+        this.parser = parser;
+    }
+
+    public static SamlSigningKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Locator for the IdP {@code internalId} configured with {@code signingCertificates}.
+     */
+    public KeyLocator get(String internalId, String[] signingCertificates) throws ProcessingException {
+        var now = clock.getAsLong();
+        var entry = entries.get(internalId);
+        if (entry == null || !Arrays.equals(entry.signingCertificates(), signingCertificates)) {
+            var certificates = new ArrayList<X509Certificate>(signingCertificates.length);
+            for (var signingCertificate : signingCertificates) {
+                certificates.add(parser.parse(signingCertificate.replaceAll("\\s", "")));
+            }
+            entry = build(signingCertificates, List.copyOf(certificates), now);
+            entries.put(internalId, entry);
+        } else if (now >= entry.rebuildAt()) {
+            entry = build(signingCertificates, entry.certificates(), now);
+            entries.put(internalId, entry);
+        }
+        return entry.locator();
+    }
+
+    private static Entry build(String[] signingCertificates, List<X509Certificate> certificates, long now) {
+        var keys = new ArrayList<Key>(certificates.size());
+        var rebuildAt = Long.MAX_VALUE;
+        for (var certificate : certificates) {
+            var notBefore = certificate.getNotBefore().getTime();
+            var notAfter = certificate.getNotAfter().getTime();
+            if (now < notBefore) {
+                rebuildAt = Math.min(rebuildAt, notBefore);
+                logger.warnf("[build] Ignoring certificate not yet valid: %s", certificate.getSubjectX500Principal());
+            } else if (now > notAfter) {
+                logger.warnf("[build] Ignoring expired certificate: %s", certificate.getSubjectX500Principal());
+            } else {
+                rebuildAt = Math.min(rebuildAt, notAfter + 1);
+                keys.add(certificate.getPublicKey());
+            }
+        }
+        return new Entry(signingCertificates, certificates, new HardcodedKeyLocator(keys), rebuildAt);
+    }
+
+    private static X509Certificate parse(String signingCertificate) throws ProcessingException {
+        return XMLSignatureUtil.getX509CertificateFromKeyInfoString(signingCertificate);
+    }
+
+    @FunctionalInterface
+    interface CertificateParser {
+        X509Certificate parse(String signingCertificate) throws ProcessingException;
+    }
+
+    private record Entry(String[] signingCertificates,
+                         List<X509Certificate> certificates,
+                         KeyLocator locator,
+                         long rebuildAt) {
+    }
+}
@@ -2,115 +2,79 @@ package com.example.utils;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWEObject;
-import com.nimbusds.jose.JWSVerifier;
-import com.nimbusds.jose.crypto.ECDHDecrypter;
-import com.nimbusds.jose.crypto.ECDSAVerifier;
-import com.nimbusds.jose.crypto.RSADecrypter;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.source.RemoteJWKSet;
-import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.JSONObjectUtils;
-import com.nimbusds.jwt.SignedJWT;
 
 import java.net.URL;
-import java.security.interfaces.ECPrivateKey;
-import java.security.interfaces.RSAPrivateKey;
 import java.util.Map;
 
+/**
+ * Decodes userinfo (MyInfo) responses that are plain JSON, a JWS, or a JWE wrapping either.
+ * <p>
+ * Verification keys come from {@link JwksCache} and are selected by kid, or by algorithm for
+ * kid-less tokens, instead of fetching the JWKS and trying every key per response.
+ * Decrypters and verifiers are shared through {@link JweDecrypterCache} and
+ * {@link JwsVerifierCache}.
+ */
 public class UserinfoCrypto {
+    static final String CACHE_SCOPE = "userinfo";
 
     private final JWK encJwk;           // your private key for decrypting JWE
     private final URL jwksUri;          // OP JWKS for verifying JWS
-    private final RemoteJWKSet<SecurityContext> jwkSource; // cached by Nimbus
+    private final String jwksCacheKey;
 
     public UserinfoCrypto(JWK encJwk, URL jwksUri) {
         this.encJwk = encJwk;
         this.jwksUri = jwksUri;
-        this.jwkSource = jwksUri != null ? new RemoteJWKSet<>(jwksUri) : null;
+        this.jwksCacheKey = jwksUri != null ? JwksCache.cacheKey(CACHE_SCOPE, jwksUri.toString()) : null;
     }
 
     public static boolean looksLikeCompactJWT(String body) {
-        if (body == null)
-            return false;
-        var dots = (int) body.chars().filter(c -> c == '.').count();
-        return dots == 2 || dots == 4; // JWS=2, JWE=4
+        return CompactJose.classify(body) != CompactJose.Type.INVALID;
     }
 
     public Map<String, Object> parseClaims(String body) throws Exception {
-        if (!looksLikeCompactJWT(body)) {
-            return JSONObjectUtils.parse(body);
-        }
-
-        // try JWE first
-        if (body.chars().filter(c -> c == '.').count() == 4) {
+        var type = CompactJose.classify(body);
+        if (type == CompactJose.Type.JWE) {
             if (encJwk == null)
                 throw new JOSEException("no privateEncJwk configured for JWE userinfo");
 
             var inner = decryptJWE(body);
-            if (looksLikeCompactJWT(inner) && inner.chars().filter(c -> c == '.').count() == 2) {
-                var json = verifyJWS(inner);
-                return JSONObjectUtils.parse(json);
+            if (ParsedToken.isJws(inner)) {
+                return JSONObjectUtils.parse(verifyJWS(inner));
             }
 
             return JSONObjectUtils.parse(inner);
         }
+        if (type == CompactJose.Type.JWS) {
+            return JSONObjectUtils.parse(verifyJWS(body));
+        }
 
-        var json = verifyJWS(body);
-        return JSONObjectUtils.parse(json);
+        return JSONObjectUtils.parse(body);
     }
 
     private String decryptJWE(String jweCompact) throws Exception {
         var jwe = JWEObject.parse(jweCompact);
-        var alg = jwe.getHeader().getAlgorithm();
-        var enc = jwe.getHeader().getEncryptionMethod();
-        if (encJwk == null)
-            throw new JOSEException("encJwk is null");
-
-        if ("RSA".equalsIgnoreCase(encJwk.getKeyType().getValue())) {
-            var dec = new RSADecrypter((RSAPrivateKey) encJwk.toRSAKey().toPrivateKey());
-            jwe.decrypt(dec);
-        } else if ("EC".equalsIgnoreCase(encJwk.getKeyType().getValue())) {
-            var dec = new ECDHDecrypter((ECPrivateKey) encJwk.toECKey().toPrivateKey());
-            jwe.decrypt(dec);
-        } else {
-            throw new JOSEException("unsupported enc key type: " + encJwk.getKeyType());
-        }
-
-        var p = jwe.getPayload();
-        return p.toString();
+        jwe.decrypt(JweDecrypterCache.getInstance().get(encJwk));
+        return jwe.getPayload().toString();
     }
 
     private String verifyJWS(String jwsCompact) throws Exception {
-        if (jwkSource == null)
+        if (jwksCacheKey == null)
             throw new JOSEException("no jwks_uri configured to verify JWS");
 
-        var jws = SignedJWT.parse(jwsCompact);
-        var jwks = JWKSet.load(jwksUri);
-        var candidates = jwks.getKeys();
-        var ok = false;
+        var token = ParsedToken.parse(jwsCompact);
+        var hdr = token.getHeader();
+        var candidates = JwksCache.getInstance().candidates(jwksCacheKey, hdr.getKeyID(), hdr.getAlgorithm(),
+                JwksCache.Ttl.DEFAULT, () -> new JwksCache.Fetched(JWKSet.load(jwksUri), null));
         for (var k : candidates) {
-            if (k.getKeyID() != null && !k.getKeyID().equals(jws.getHeader().getKeyID()))
-                continue;
-            if (k.getKeyType() == null)
-                continue;
-
-            JWSVerifier verifier = null;
-            switch (String.valueOf(k.getKeyType())) {
-                case "EC" -> verifier = new ECDSAVerifier(k.toECKey());
-                case "RSA" -> verifier = new RSASSAVerifier(k.toRSAKey());
-                default -> {
-                }
-            }
-            if (verifier != null && jws.verify(verifier)) {
-                ok = true;
-                break;
+            var verifier = JwksCache.getInstance().verifier(jwksCacheKey, k, hdr.getAlgorithm());
+            if (verifier != null && token.getJwsObject().verify(verifier)) {
+                return token.getPayloadString();
             }
         }
-        if (!ok)
-            throw new JOSEException("userinfo JWS signature verification failed");
 
-        return jws.getPayload().toString();
+        throw new JOSEException("userinfo JWS signature verification failed (kid=" + hdr.getKeyID() + ", candidates=" + candidates.size() + ")");
     }
 }
@@ -0,0 +1,119 @@
+package com.example.utils;
+
+import org.jboss.logging.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded cache of token validation results for token exchange, keyed by the SHA-256 of the
+ * encoded token so repeated exchanges of the same subject token skip decryption, signature
+ * verification and userinfo calls.
+ * <p>
+ * An entry expires at the token's {@code exp} minus the allowed clock skew; tokens without
+ * {@code exp} are not cached. Cached values are shared between requests and must be treated
+ * as read-only.
+ */
+public class ValidatedTokenCache {
+    private static final Logger logger = Logger.getLogger(ValidatedTokenCache.class);
+
+    static final int MAX_ENTRIES = 1024;
+
+    private static final ValidatedTokenCache INSTANCE = new ValidatedTokenCache(MAX_ENTRIES, System::currentTimeMillis);
+
+    private final Map<String, Entry> entries;
+    private final LongSupplier clock;
+
+    ValidatedTokenCache(int maxEntries, LongSupplier clock) {
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static ValidatedTokenCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Cached result for {@code cacheKey}, or {@code null} when absent, expired or of another type.
+     */
+    public <T> T get(String cacheKey, Class<T> type) {
+        synchronized (entries) {
+            var entry = entries.get(cacheKey);
+            if (entry == null) {
+                return null;
+            }
+            if (clock.getAsLong() >= entry.expiresAt()) {
+                entries.remove(cacheKey);
+                return null;
+            }
+            return type.isInstance(entry.value()) ? type.cast(entry.value()) : null;
+        }
+    }
+
+    /**
+     * Cache {@code value} until {@code exp} (epoch seconds) minus {@code allowedClockSkew}
+     * seconds. Does nothing when {@code exp} is unknown or already within the skew.
+     */
+    public void put(String cacheKey, Object value, Long exp, int allowedClockSkew) {
+        if (value == null || exp == null) {
+            return;
+        }
+        var expiresAt = (exp - allowedClockSkew) * 1000L;
+        if (expiresAt <= clock.getAsLong()) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(cacheKey, new Entry(value, expiresAt));
+        }
+        logger.debugf("[put] Cached validation result until %d", expiresAt);
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * {@code exp} of a compact JWS read without verifying it, for bounding the lifetime of a
+     * result the IdP has already validated (e.g. through userinfo). {@code null} for opaque
+     * or encrypted tokens.
+     */
+    public static Long unverifiedExp(String encodedToken) {
+        if (!ParsedToken.isJws(encodedToken)) {
+            return null;
+        }
+        try {
+            return ParsedToken.parse(encodedToken).getClaims().getExp();
+        } catch (Exception e) {
+            logger.debugf("[unverifiedExp] Unable to read exp from token: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    public static String cacheKey(String realmId, String alias, String purpose, String encodedToken) {
+        return realmId + "|" + alias + "|" + purpose + "|" + sha256(encodedToken);
+    }
+
+    static String sha256(String value) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    record Entry(Object value, long expiresAt) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.key;
+
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwkSetFileTest {
+
+    private static String jwkSet(String passiveKid) throws Exception {
+        var enc = new ECKeyGenerator(Curve.P_256).keyID("enc-2025").algorithm(JWEAlgorithm.ECDH_ES_A256KW).generate();
+        var sig = new RSAKeyGenerator(2048).keyID("sig-2025").keyUse(KeyUse.SIGNATURE).generate();
+        var keys = new ArrayList<Map<String, Object>>();
+        for (var key : List.of(enc, sig)) {
+            var json = key.toJSONObject();
+            if (key.getKeyID().equals(passiveKid)) {
+                json.put("status", "passive");
+            }
+            keys.add(json);
+        }
+        return JSONObjectUtils.toJSONString(Map.of("keys", keys));
+    }
+
+    @Test
+    void parsesEcAndRsaKeysWithStatus() throws Exception {
+        var keys = JwkSetFile.parse(jwkSet("sig-2025"));
+
+        assertEquals(2, keys.size());
+        var enc = keys.get(0);
+        assertEquals(KeyType.EC, enc.type());
+        assertEquals(org.keycloak.crypto.KeyUse.ENC, enc.use());
+        assertEquals("ECDH-ES+A256KW", enc.algorithm());
+        assertEquals(KeyStatus.ACTIVE, enc.status());
+        assertNotNull(enc.privateKey());
+
+        var sig = keys.get(1);
+        assertEquals(KeyType.RSA, sig.type());
+        assertEquals("RS256", sig.algorithm());
+        assertEquals(KeyStatus.PASSIVE, sig.status());
+
+        var wrapper = sig.toKeyWrapper("component-1", 100, true, true);
+        assertEquals(KeyStatus.PASSIVE, wrapper.getStatus());
+        assertEquals(KeyStatus.DISABLED, enc.toKeyWrapper("component-1", 100, false, true).getStatus());
+    }
+
+    @Test
+    void reloadSwapsSetOnlyWhenContentIsValid(@TempDir Path dir) throws Exception {
+        var path = dir.resolve("jwks.json");
+        Files.writeString(path, jwkSet(null));
+        var changedRealms = new ArrayList<String>();
+        var file = new JwkSetFile(path, changedRealms::add);
+        file.usedBy("realm-1");
+
+        assertTrue(file.reload());
+        var first = file.current();
+        assertFalse(file.reload());
+
+        Files.writeString(path, "{\"keys\":[{\"kty\":\"EC\"}]}");
+        assertFalse(file.reload());
+        assertSame(first, file.current());
+
+        Files.writeString(path, jwkSet("enc-2025"));
+        assertSame(first, file.current());
+        assertTrue(file.reload());
+        assertNotSame(first, file.current());
+        assertEquals(KeyStatus.PASSIVE, file.current().keys().get(0).status());
+        assertEquals(List.of("realm-1", "realm-1"), changedRealms);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AttributeProjectionTest {
+
+    @Test
+    void defaultProjectionDropsRawTokens() {
+        var projection = AttributeProjection.compile(null, null);
+
+        assertTrue(projection.test("uinfin.value"));
+        assertTrue(projection.test("access_token.scope"));
+        assertFalse(projection.test("access_token.token"));
+        assertFalse(projection.test("access_token.id_token"));
+        assertFalse(projection.test("access_token.refresh_token"));
+    }
+
+    @Test
+    void configuredExcludesKeepDroppingRawTokens() {
+        var projection = AttributeProjection.compile(null, "*.source");
+
+        assertFalse(projection.test("uinfin.source"));
+        assertFalse(projection.test("access_token.token"));
+        assertFalse(AttributeProjection.compile(null, "").test("access_token.id_token"));
+        assertTrue(projection.test("access_token.scope"));
+    }
+
+    @Test
+    void rawTokensKeptOnlyWhenOptedIn() {
+        var projection = AttributeProjection.compile(null, "*.source", true);
+
+        assertTrue(projection.test("access_token.token"));
+        assertTrue(projection.test("access_token.refresh_token"));
+        assertFalse(projection.test("uinfin.source"));
+        assertTrue(AttributeProjection.compile(null, null, true).test("access_token.id_token"));
+    }
+
+    @Test
+    void includeAndExcludeGlobs() {
+        var projection = AttributeProjection.compile("uinfin.*, id_token.entityInfo.*, name.valu?", "*.source,*.classification");
+
+        assertTrue(projection.test("uinfin.value"));
+        assertTrue(projection.test("id_token.entityInfo.CPEntID"));
+        assertTrue(projection.test("name.value"));
+        assertFalse(projection.test("uinfin.source"));
+        assertFalse(projection.test("regadd.unit.value"));
+        assertFalse(projection.test("access_token.scope"));
+        assertTrue(AttributeProjection.compile("a+b(c)", "").test("a+b(c)"));
+        assertTrue(AttributeProjection.compile(" ", "", true).test("access_token.token"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.utils;
+
+import com.example.utils.AuthorizationDecisionCache.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AuthorizationDecisionCacheTest {
+
+    @Test
+    void decisionIsScopedToTokenAndExpires() {
+        var now = new AtomicLong(1_000);
+        var cache = new AuthorizationDecisionCache(16, now::get);
+
+        cache.put("realm", "alice", 100, Decision.ALLOWED);
+        cache.put("realm", "bob", 0, Decision.ALLOWED);
+
+        assertEquals(Decision.ALLOWED, cache.get("realm", "alice", 100));
+        assertNull(cache.get("realm", "alice", 101));
+        assertNull(cache.get("realm", "bob", 0));
+
+        now.addAndGet(AuthorizationDecisionCache.TTL_MILLIS);
+        assertNull(cache.get("realm", "alice", 100));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidateAllDropsEveryDecision() {
+        var cache = new AuthorizationDecisionCache(16, () -> 0);
+        cache.put("realm", "alice", 100, Decision.NOT_ADMIN);
+        cache.put("other", "alice", 100, Decision.ALLOWED);
+
+        cache.invalidateAll();
+
+        assertNull(cache.get("realm", "alice", 100));
+        assertNull(cache.get("other", "alice", 100));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.IDToken;
+import org.keycloak.representations.JsonWebToken;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaimTemplateTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void defaultTemplateReadsMyInfoFields() throws Exception {
+        var userInfo = objectMapper.readTree("""
+                {
+                    "uinfin": {"value": "S1234567A"},
+                    "name": {"value": "TAN XIAO HUI"},
+                    "aliasname": {"value": "TRICIA TAN"},
+                    "email": {"value": null}
+                }
+                """);
+
+        var template = ClaimTemplate.compile(null, " ");
+        var result = template.evaluate(userInfo, null);
+
+        assertFalse(template.hasAttributeTemplate());
+        assertEquals(Map.of(
+                "username", "S1234567A",
+                "name", "TAN XIAO HUI",
+                "firstName", "TAN XIAO HUI",
+                "lastName", "TRICIA TAN"), result.identity());
+        assertTrue(result.attributes().isEmpty());
+    }
+
+    @Test
+    void pointersPathsAndIdTokenClaimsShareOnePass() throws Exception {
+        var userInfo = objectMapper.readTree("""
+                {"regadd": {"unit": {"value": "128"}}, "vehicles": [{"make": {"value": "X"}}], "a/b": 1}
+                """);
+        var idToken = new JsonWebToken().subject("s=S1234567A,u=123");
+        idToken.getOtherClaims().put("entityInfo", Map.of("CPEntID", "UEN1", "roles", List.of("r0", "r1")));
+
+        var template = ClaimTemplate.compile("""
+                username=id_token:entityInfo.CPEntID
+                email=userinfo:/regadd/unit/value
+                """, "unit=regadd.unit.value, make=vehicles[0].make.value, slash=/a~1b,"
+                + "sub=id_token:sub, role=id_token:/entityInfo/roles/1, missing=nothing.here");
+        var result = template.evaluate(userInfo, idToken);
+
+        assertTrue(template.hasAttributeTemplate());
+        assertEquals(Map.of("username", "UEN1", "email", "128"), result.identity());
+        assertEquals(Map.of(
+                "unit", "128",
+                "make", "X",
+                "slash", "1",
+                "sub", "s=S1234567A,u=123",
+                "role", "r1"), result.attributes());
+    }
+
+    @Test
+    void readsRegisteredIdTokenClaims() {
+        var idToken = new IDToken();
+        idToken.exp(1_700_000_300L).iat(1_700_000_000L).nbf(1_700_000_000L).audience("client-a", "client-b");
+        idToken.setNonce("n-0S6_WzA2Mj");
+        idToken.setAuth_time(1_699_999_990L);
+
+        var result = ClaimTemplate.compile(null, "exp=id_token:exp, iat=id_token:iat, nbf=id_token:nbf,"
+                + "aud=id_token:aud[1], nonce=id_token:nonce, authTime=id_token:auth_time").evaluate(null, idToken);
+
+        assertEquals(Map.of(
+                "exp", "1700000300",
+                "iat", "1700000000",
+                "nbf", "1700000000",
+                "aud", "client-b",
+                "nonce", "n-0S6_WzA2Mj",
+                "authTime", "1699999990"), result.attributes());
+    }
+
+    @Test
+    void rejectsMalformedTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> ClaimTemplate.compile("nickname=uinfin.value", null));
+        assertThrows(IllegalArgumentException.class, () -> ClaimTemplate.compile("username", null));
+        assertThrows(IllegalArgumentException.class, () -> ClaimTemplate.compile(null, "a=b..c"));
+        assertThrows(IllegalArgumentException.class, () -> ClaimTemplate.compile(null, "a=b[x]"));
+        assertEquals(List.of("vehicles", "0", "make"), ClaimTemplate.segments("vehicles[0].make"));
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientAssertionServiceTest {
+
+    @Test
+    void signsFreshClaimsWithSharedSigner() throws Exception {
+        var key = new ECKeyGenerator(Curve.P_256).keyID("sig-1").generate();
+        var header = new JWSHeader.Builder(JWSAlgorithm.ES256).type(JOSEObjectType.JWT).keyID("sig-1").build();
+        var claims = new LinkedHashMap<String, Object>();
+        claims.put("sub", "client-1");
+        claims.put("iss", "client-1");
+        claims.put("aud", "https://idp");
+        var service = new ClientAssertionService(header, ClientAssertionService.signer(key.toECPrivateKey()), claims, 120, 5);
+
+        var first = SignedJWT.parse(service.sign(1_700_000_000L));
+        var second = SignedJWT.parse(service.sign(1_700_000_000L));
+
+        assertTrue(first.verify(new ECDSAVerifier(key.toPublicJWK())));
+        assertEquals("sig-1", first.getHeader().getKeyID());
+        var claimsSet = first.getJWTClaimsSet();
+        assertEquals("client-1", claimsSet.getSubject());
+        assertEquals("client-1", claimsSet.getIssuer());
+        assertEquals("https://idp", claimsSet.getAudience().get(0));
+        assertEquals(1_700_000_005L, claimsSet.getIssueTime().getTime() / 1000);
+        assertEquals(1_700_000_125L, claimsSet.getExpirationTime().getTime() / 1000);
+        assertNotEquals(claimsSet.getJWTID(), second.getJWTClaimsSet().getJWTID());
+    }
+}
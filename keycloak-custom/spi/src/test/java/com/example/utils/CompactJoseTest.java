@@ -0,0 +1,63 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactJoseTest {
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void classifiesWithoutSplitting() {
+        assertEquals(CompactJose.Type.JWS, CompactJose.classify("eyJ.eyJ.sig"));
+        assertEquals(CompactJose.Type.JWS, CompactJose.classify("eyJ.eyJ."));
+        assertEquals(CompactJose.Type.JWE, CompactJose.classify("eyJ..iv.ct.tag"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify(".eyJ.sig"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify("{\"email\":\"a.b@c.d\"}"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify("a.b.c.d.e.f"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify("a".repeat(CompactJose.MAX_LENGTH) + ".b.c"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify(null));
+    }
+
+    @Test
+    void ignoresSurroundingWhitespace() {
+        var jws = encode("{\"alg\":\"ES256\"}") + "." + encode("{\"sub\":\"u-1\"}") + ".c2ln";
+        var jwe = encode("{\"alg\":\"ECDH-ES+A256KW\"}") + "..aXY.Y3Q.dGFn";
+
+        assertEquals(CompactJose.Type.JWS, CompactJose.classify(jws + "\n"));
+        assertEquals(CompactJose.Type.JWE, CompactJose.classify(" " + jwe + "\r\n"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify(" \n"));
+        assertEquals(CompactJose.Type.INVALID, CompactJose.classify("eyJ.eyJ\n.sig"));
+
+        var token = CompactJose.parse(jwe + "\n");
+        assertEquals(jwe, token.getToken());
+        assertEquals("ct", new String(token.decode(3), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void decodesSegmentsLikeJdkDecoder() {
+        for (var payload : new String[]{"", "a", "ab", "abc", "{\"sub\":\"s=S8979373D\",\"exp\":1700000000}"}) {
+            var token = CompactJose.parse(encode("{\"alg\":\"ES256\"}") + "." + encode(payload) + ".c2ln");
+            assertArrayEquals(payload.getBytes(StandardCharsets.UTF_8), token.decode(1));
+            assertEquals(payload, new String(token.decode(1), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void readsBearerPayload() throws Exception {
+        var header = "bearer  " + encode("{\"alg\":\"ES256\"}") + "." + encode("{\"sub\":\"u-1\"}") + ".c2ln ";
+
+        var payload = CompactJose.parseBearer(header).readPayload(new ObjectMapper(), Map.class);
+
+        assertEquals("u-1", payload.get("sub"));
+        assertThrows(IllegalArgumentException.class, () -> CompactJose.parseBearer("Bearer opaque-token"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecryptionKeyIndexTest {
+
+    private static KeyWrapper key(String kid, KeyUse use, KeyStatus status, String alg) throws Exception {
+        return TestKeys.key(kid, use, status, alg, TestKeys.keyPair("EC", 256));
+    }
+
+    @Test
+    void indexesEnabledEncKeysByKidAndActiveKeysByAlgorithm() throws Exception {
+        var primary = key("enc-1", KeyUse.ENC, KeyStatus.ACTIVE, "ECDH-ES+A256KW");
+        var secondary = key("enc-2", KeyUse.ENC, KeyStatus.ACTIVE, "ECDH-ES+A256KW");
+        var rotated = key("enc-0", KeyUse.ENC, KeyStatus.PASSIVE, "ECDH-ES+A128KW");
+        var disabled = key("enc-x", KeyUse.ENC, KeyStatus.DISABLED, "ECDH-ES+A256KW");
+        var signing = key("sig-1", KeyUse.SIG, KeyStatus.ACTIVE, "ES256");
+
+        var index = DecryptionKeyIndex.Index.build(Stream.of(primary, secondary, rotated, disabled, signing), 0);
+
+        assertSame(primary, index.byKid().get("enc-1"));
+        assertSame(secondary, index.byKid().get("enc-2"));
+        assertSame(rotated, index.byKid().get("enc-0"));
+        assertNull(index.byKid().get("enc-x"));
+        assertNull(index.byKid().get("sig-1"));
+
+        assertSame(primary, index.byAlgorithm().get(DecryptionKeyIndex.normalize("ecdh-es+a256kw")));
+        assertNull(index.byAlgorithm().get(DecryptionKeyIndex.normalize("ECDH-ES+A128KW")));
+
+        var passive = key("enc-p", KeyUse.ENC, KeyStatus.PASSIVE, "ECDH-ES+A256KW");
+        var candidates = DecryptionKeyIndex.Index.build(Stream.of(passive, primary, secondary, disabled), 0)
+                .candidates().get(DecryptionKeyIndex.normalize("ECDH-ES+A256KW"));
+        assertEquals(List.of(primary, secondary, passive), candidates);
+    }
+}
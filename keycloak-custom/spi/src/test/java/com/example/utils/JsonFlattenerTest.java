@@ -0,0 +1,68 @@
+package com.example.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JsonFlattenerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String PERSON = """
+            {
+                "uinfin": {"value": "S1234567A", "classification": "C", "source": "1"},
+                "name": {"value": "TAN XIAO HUI", "lastupdated": null},
+                "empty": {},
+                "none": [],
+                "regadd": {"unit": {"value": "128"}, "floor": {"value": 9}},
+                "vehicles": [{"make": {"value": "X"}}, {"make": {"value": "Y"}}],
+                "tags": [["a", "b"], true],
+                "after": "end"
+            }
+            """;
+
+    @Test
+    void flattensNestedObjectsAndArraysFromParser() throws Exception {
+        var result = new LinkedHashMap<String, String>();
+        try (var parser = objectMapper.createParser(PERSON)) {
+            JsonFlattener.flatten(parser, null, result::put);
+        }
+
+        assertEquals(Map.ofEntries(
+                Map.entry("uinfin.value", "S1234567A"),
+                Map.entry("uinfin.classification", "C"),
+                Map.entry("uinfin.source", "1"),
+                Map.entry("name.value", "TAN XIAO HUI"),
+                Map.entry("name.lastupdated", "null"),
+                Map.entry("regadd.unit.value", "128"),
+                Map.entry("regadd.floor.value", "9"),
+                Map.entry("vehicles[0].make.value", "X"),
+                Map.entry("vehicles[1].make.value", "Y"),
+                Map.entry("tags[0][0]", "a"),
+                Map.entry("tags[0][1]", "b"),
+                Map.entry("tags[1]", "true"),
+                Map.entry("after", "end")), result);
+    }
+
+    @Test
+    void treeAndStreamProduceTheSamePairs() throws Exception {
+        try (var parser = objectMapper.createParser(PERSON)) {
+            assertEquals(JsonFlattener.flatten(parser, 16), JsonFlattener.flatten(objectMapper.readTree(PERSON), 16));
+        }
+    }
+
+    @Test
+    void prefixesPathsAndStopsAfterTheValue() throws Exception {
+        var result = new LinkedHashMap<String, String>();
+        try (var parser = objectMapper.createParser("[{\"a\": 1}, {\"b\": 2}]")) {
+            parser.nextToken();
+            parser.nextToken();
+            JsonFlattener.flatten(parser, "root", result::put);
+        }
+
+        assertEquals(Map.of("root.a", "1"), result);
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.utils;
+
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyFactory;
+import java.security.spec.PKCS8EncodedKeySpec;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JweDecrypterCacheTest {
+
+    @Test
+    void reusesDecrypterForSameKeyMaterial() throws Exception {
+        var cache = new JweDecrypterCache(8);
+        var privateKey = new ECKeyGenerator(Curve.P_256).generate().toPrivateKey();
+        var decoded = KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(privateKey.getEncoded()));
+
+        var first = cache.get("enc-1", "provider-1", privateKey);
+        assertSame(first, cache.get("enc-1", "provider-1", decoded));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void rotatedKeyUnderSameKidGetsNewDecrypter() throws Exception {
+        var cache = new JweDecrypterCache(8);
+        var before = cache.get("enc-1", "provider-1", new ECKeyGenerator(Curve.P_256).generate().toPrivateKey());
+        var after = cache.get("enc-1", "provider-1", new ECKeyGenerator(Curve.P_256).generate().toPrivateKey());
+
+        assertNotSame(before, after);
+    }
+
+    @Test
+    void jwkIsConvertedOnce() throws Exception {
+        var cache = new JweDecrypterCache(8);
+        var jwk = new ECKeyGenerator(Curve.P_256).keyID("enc-1").generate();
+
+        assertSame(cache.get(jwk), cache.get(jwk));
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.utils;
+
+import com.nimbusds.jose.EncryptionMethod;
+import com.nimbusds.jose.JWEAlgorithm;
+import com.nimbusds.jose.JWEHeader;
+import com.nimbusds.jose.JWEObject;
+import com.nimbusds.jose.Payload;
+import com.nimbusds.jose.crypto.ECDHEncrypter;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import org.junit.jupiter.api.Test;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JweKeySelectorTest {
+
+    private static KeyWrapper wrap(ECKey jwk) throws Exception {
+        return TestKeys.key(jwk.getKeyID(), KeyUse.ENC, KeyStatus.ACTIVE, "ECDH-ES+A256KW", jwk.toKeyPair());
+    }
+
+    private static JWEObject kidlessJwe(ECKey recipient) throws Exception {
+        var jwe = new JWEObject(new JWEHeader.Builder(JWEAlgorithm.ECDH_ES_A256KW, EncryptionMethod.A256GCM).build(),
+                new Payload("{\"sub\":\"s=S8979373D\"}"));
+        jwe.encrypt(new ECDHEncrypter(recipient.toPublicJWK()));
+        return JWEObject.parse(jwe.serialize());
+    }
+
+    @Test
+    void learnsWhichKeyAnIssuerEncryptsTo() throws Exception {
+        var selector = new JweKeySelector(8);
+        var newKey = new ECKeyGenerator(Curve.P_256).keyID("enc-new").generate();
+        var oldKey = new ECKeyGenerator(Curve.P_256).keyID("enc-old").generate();
+        var candidates = List.of(wrap(newKey), wrap(oldKey));
+
+        var first = kidlessJwe(oldKey);
+        selector.decrypt("realm|https://idp|ECDH-ES+A256KW", candidates, first);
+        assertEquals("{\"sub\":\"s=S8979373D\"}", first.getPayload().toString());
+        assertEquals(new JweKeySelector.Stats(0, 1, 0), selector.getStats());
+
+        selector.decrypt("realm|https://idp|ECDH-ES+A256KW", candidates, kidlessJwe(oldKey));
+        assertEquals(new JweKeySelector.Stats(1, 1, 0), selector.getStats());
+    }
+
+    @Test
+    void failsWhenNoCandidateDecrypts() throws Exception {
+        var selector = new JweKeySelector(8);
+        var candidates = List.of(wrap(new ECKeyGenerator(Curve.P_256).keyID("enc-1").generate()));
+        var jwe = kidlessJwe(new ECKeyGenerator(Curve.P_256).generate());
+
+        assertThrows(Exception.class, () -> selector.decrypt("realm|https://idp|ECDH-ES+A256KW", candidates, jwe));
+        assertEquals(1, selector.getStats().failures());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksCacheTest {
+    private static final String KEY = JwksCache.cacheKey("realm", "https://idp/jwks");
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private final JwksCache cache = new JwksCache(now::get);
+
+    private static JWKSet jwks(String... kids) throws Exception {
+        var keys = new java.util.ArrayList<com.nimbusds.jose.jwk.JWK>();
+        for (var kid : kids) {
+            keys.add(new ECKeyGenerator(Curve.P_256).keyID(kid).generate().toPublicJWK());
+        }
+        return new JWKSet(keys);
+    }
+
+    @Test
+    void parseMaxAgeReadsDirectives() {
+        assertEquals(300L, JwksCache.parseMaxAge("public, max-age=300"));
+        assertEquals(0L, JwksCache.parseMaxAge("no-store"));
+        assertNull(JwksCache.parseMaxAge("public"));
+        assertNull(JwksCache.parseMaxAge(null));
+    }
+
+    @Test
+    void ttlIsClampedToFloorAndCeiling() {
+        var ttl = new JwksCache.Ttl(60, 600);
+        assertEquals(60, ttl.clamp(5L));
+        assertEquals(600, ttl.clamp(86400L));
+        assertEquals(120, ttl.clamp(120L));
+        assertEquals(60, ttl.clamp(null));
+    }
+
+    @Test
+    void verifierLookupUsesThumbprintComputedAtFetch() throws Exception {
+        var set = jwks("k1");
+        var jwk = cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, () -> new JwksCache.Fetched(set, 120L));
+
+        // a recomputed thumbprint would be an equal but new string, the stored one is returned as is
+        var keys = cache.keys(KEY);
+        var stored = keys.thumbprints().get(jwk);
+        assertEquals(JwsVerifierCache.thumbprint(jwk), stored);
+        assertSame(stored, keys.thumbprint(jwk));
+        assertSame(JwsVerifierCache.getInstance().get(jwk, stored, JWSAlgorithm.ES256),
+                cache.verifier(KEY, jwk, JWSAlgorithm.ES256));
+    }
+
+    @Test
+    void servesFromCacheUntilExpiry() throws Exception {
+        var fetches = new AtomicInteger();
+        var set = jwks("k1");
+        JwksCache.Loader loader = () -> {
+            fetches.incrementAndGet();
+            return new JwksCache.Fetched(set, 120L);
+        };
+
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader));
+        now.addAndGet(119_000);
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(1, fetches.get());
+
+        now.addAndGet(2_000);
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void kidMissRefreshesOnceWithinInterval() throws Exception {
+        var fetches = new AtomicInteger();
+        var before = jwks("k1");
+        var after = jwks("k1", "k2");
+        JwksCache.Loader loader = () -> new JwksCache.Fetched(fetches.incrementAndGet() == 1 ? before : after, 3600L);
+
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader));
+        assertNull(cache.lookup(KEY, "k2", JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(1, fetches.get());
+
+        now.addAndGet(JwksCache.KID_MISS_REFRESH_INTERVAL_MILLIS);
+        assertNotNull(cache.lookup(KEY, "k2", JwksCache.Ttl.DEFAULT, loader));
+        assertNull(cache.lookup(KEY, "unknown", JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void selectsCandidatesByKidOrAlgorithm() throws Exception {
+        var ec = new ECKeyGenerator(Curve.P_256).keyID("ec").generate().toPublicJWK();
+        var rsa = new com.nimbusds.jose.jwk.gen.RSAKeyGenerator(2048).keyID("rsa").generate().toPublicJWK();
+        JwksCache.Loader loader = () -> new JwksCache.Fetched(new JWKSet(java.util.List.of(ec, rsa)), 300L);
+
+        assertEquals(java.util.List.of(rsa), cache.candidates(KEY, "rsa", JWSAlgorithm.RS256, JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(java.util.List.of(ec), cache.candidates(KEY, null, JWSAlgorithm.ES256, JwksCache.Ttl.DEFAULT, loader));
+        assertTrue(cache.candidates(KEY, null, JWSAlgorithm.HS256, JwksCache.Ttl.DEFAULT, loader).isEmpty());
+    }
+
+    @Test
+    void servesStaleSetWhenRefreshFails() throws Exception {
+        var set = jwks("k1");
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, () -> new JwksCache.Fetched(set, 60L)));
+
+        now.addAndGet(61_000);
+        var jwk = cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, () -> {
+            throw new IOException("idp down");
+        });
+        assertNotNull(jwk);
+    }
+
+    @Test
+    void managedKeyServesExpiredSetWithoutFetching() throws Exception {
+        var fetches = new AtomicInteger();
+        var set = jwks("k1");
+        JwksCache.Loader loader = () -> {
+            fetches.incrementAndGet();
+            return new JwksCache.Fetched(set, 60L);
+        };
+        cache.manage(KEY);
+        assertEquals(60L, cache.reload(KEY, JwksCache.Ttl.DEFAULT, loader));
+
+        now.addAndGet(3_600_000);
+        assertNotNull(cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void concurrentMissesShareOneFetch() throws Exception {
+        var fetches = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var set = jwks("k1");
+        JwksCache.Loader loader = () -> {
+            fetches.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return new JwksCache.Fetched(set, 300L);
+        };
+
+        var pool = Executors.newFixedThreadPool(8);
+        try {
+            var results = new java.util.ArrayList<java.util.concurrent.Future<?>>();
+            for (var i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> cache.lookup(KEY, "k1", JwksCache.Ttl.DEFAULT, loader)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (var result : results) {
+                assertNotNull(result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, fetches.get());
+    }
+}
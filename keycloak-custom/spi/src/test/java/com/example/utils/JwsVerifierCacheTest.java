@@ -0,0 +1,49 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwsVerifierCacheTest {
+
+    @Test
+    void reusesVerifierForSameKeyAndAlgorithm() throws Exception {
+        var cache = new JwsVerifierCache(8);
+        var jwk = new ECKeyGenerator(Curve.P_256).keyID("k1").generate().toPublicJWK();
+        var copy = com.nimbusds.jose.jwk.JWK.parse(jwk.toJSONString());
+
+        var first = cache.get(jwk, JwsVerifierCache.thumbprint(jwk), JWSAlgorithm.ES256);
+        assertSame(first, cache.get(copy, JwsVerifierCache.thumbprint(copy), JWSAlgorithm.ES256));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void isBounded() throws Exception {
+        var cache = new JwsVerifierCache(2);
+        for (var i = 0; i < 5; i++) {
+            var jwk = new ECKeyGenerator(Curve.P_256).keyID("k" + i).generate().toPublicJWK();
+            cache.get(jwk, JwsVerifierCache.thumbprint(jwk), JWSAlgorithm.ES256);
+        }
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void evictsKeysRemovedFromJwks() throws Exception {
+        var cache = new JwsVerifierCache(8);
+        var kept = new ECKeyGenerator(Curve.P_256).keyID("kept").generate().toPublicJWK();
+        var rotated = new ECKeyGenerator(Curve.P_256).keyID("rotated").generate().toPublicJWK();
+        var keptThumbprint = JwsVerifierCache.thumbprint(kept);
+        var rotatedThumbprint = JwsVerifierCache.thumbprint(rotated);
+        cache.get(kept, keptThumbprint, JWSAlgorithm.ES256);
+        cache.get(rotated, rotatedThumbprint, JWSAlgorithm.ES256);
+
+        cache.evictRemoved(List.of(keptThumbprint, rotatedThumbprint), List.of(keptThumbprint));
+
+        assertEquals(1, cache.size());
+    }
+}
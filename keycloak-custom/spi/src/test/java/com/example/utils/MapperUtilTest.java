@@ -158,5 +158,47 @@ class MapperUtilTest {
         var result = MapperUtil.toMap((AccessTokenResponse) null);
         assertTrue(result.isEmpty());
     }
-}
 
+    @Test
+    void testDiff_writesOnlyChangedAttributes() {
+        var current = Map.of(
+                "same", List.of("v"),
+                "changed", List.of("old"),
+                "multi", List.of("a", "b"),
+                "cleared", List.of("x"));
+        var incoming = new LinkedHashMap<String, List<String>>();
+        incoming.put("same", List.of("v"));
+        incoming.put("changed", List.of("new"));
+        incoming.put("multi", List.of("a", "b", "c"));
+        incoming.put("added", List.of("n"));
+        incoming.put("cleared", Collections.singletonList(null));
+        incoming.put("neverSet", Collections.singletonList(null));
+
+        var delta = MapperUtil.diff(current, incoming);
+
+        assertEquals(Map.of(
+                "changed", List.of("new"),
+                "multi", List.of("a", "b", "c"),
+                "added", List.of("n")), delta.replaced());
+        assertEquals(List.of("cleared"), delta.removed());
+        assertEquals(2, delta.unchanged());
+    }
+
+    @Test
+    void testDiff_removesStoredAttributesNoLongerRetained() {
+        var current = Map.of(
+                "uinfin.value", List.of("S1234567A"),
+                "access_token.token", List.of("eyJ..."),
+                "access_token.refresh_token", List.of("eyJ..."),
+                "email", List.of("tan@example.com"));
+        var incoming = Map.of("uinfin.value", List.of("S1234567A"));
+        var projection = AttributeProjection.compile(null, null);
+
+        var delta = MapperUtil.diff(current, incoming, attrKey -> projection.test(attrKey) || attrKey.equals("email"));
+
+        assertTrue(delta.replaced().isEmpty());
+        assertEquals(Set.of("access_token.token", "access_token.refresh_token"), new HashSet<>(delta.removed()));
+        assertEquals(1, delta.unchanged());
+        assertTrue(MapperUtil.diff(current, incoming).removed().isEmpty());
+    }
+}
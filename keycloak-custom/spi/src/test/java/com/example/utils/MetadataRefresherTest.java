@@ -0,0 +1,111 @@
+package com.example.utils;
+
+import com.example.config.CustomOIDCIdentityProviderConfig;
+import org.junit.jupiter.api.Test;
+import org.keycloak.models.IdentityProviderModel;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.KeycloakSessionFactory;
+import org.keycloak.models.RealmModel;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataRefresherTest {
+
+    private static final String REALM_ID = "realm-1";
+    private static final String ALIAS = "singpass";
+
+    private final KeycloakSessionFactory sessionFactory = Mockito.mock(KeycloakSessionFactory.class);
+    private final RealmModel realm = Mockito.mock(RealmModel.class);
+
+    private KeycloakSession session() {
+        Mockito.when(realm.getId()).thenReturn(REALM_ID);
+        var jobSession = Mockito.mock(KeycloakSession.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(jobSession.realms().getRealm(REALM_ID)).thenReturn(realm);
+        Mockito.when(sessionFactory.create()).thenReturn(jobSession);
+
+        var session = Mockito.mock(KeycloakSession.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito.when(session.getContext().getRealm()).thenReturn(realm);
+        Mockito.when(session.getKeycloakSessionFactory()).thenReturn(sessionFactory);
+        return session;
+    }
+
+    private static CustomOIDCIdentityProviderConfig config() {
+        var config = new CustomOIDCIdentityProviderConfig();
+        config.setAlias(ALIAS);
+        return config;
+    }
+
+    private static void awaitDropped(MetadataRefresher refresher) throws InterruptedException {
+        var deadline = System.nanoTime() + 5_000_000_000L;
+        while (refresher.isRefreshing(REALM_ID, ALIAS) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(refresher.isRefreshing(REALM_ID, ALIAS));
+    }
+
+    @Test
+    void nextDelayRefreshesAheadOfTheTtl() {
+        assertEquals(2880, MetadataRefresher.nextDelay(3600));
+        assertEquals(MetadataRefresher.MIN_DELAY_SECONDS, MetadataRefresher.nextDelay(10));
+        assertEquals(MetadataRefresher.MIN_DELAY_SECONDS, MetadataRefresher.nextDelay(0));
+    }
+
+    @Test
+    void retryDelayBacksOffExponentiallyUpToTheMaximum() {
+        assertEquals(30, MetadataRefresher.retryDelay(0));
+        assertEquals(30, MetadataRefresher.retryDelay(1));
+        assertEquals(60, MetadataRefresher.retryDelay(2));
+        assertEquals(240, MetadataRefresher.retryDelay(4));
+        assertEquals(MetadataRefresher.MAX_RETRY_DELAY_SECONDS, MetadataRefresher.retryDelay(5));
+        assertEquals(MetadataRefresher.MAX_RETRY_DELAY_SECONDS, MetadataRefresher.retryDelay(1_000));
+    }
+
+    @Test
+    void dropsRemovedIdp() throws Exception {
+        var refresher = new MetadataRefresher();
+        var session = session();
+        Mockito.when(realm.getIdentityProviderByAlias(ALIAS)).thenReturn(null);
+
+        try {
+            refresher.register(session, config());
+            awaitDropped(refresher);
+        } finally {
+            refresher.shutdown();
+        }
+    }
+
+    @Test
+    void dropsDisabledIdp() throws Exception {
+        var refresher = new MetadataRefresher();
+        var session = session();
+        var model = new IdentityProviderModel();
+        model.setEnabled(false);
+        Mockito.when(realm.getIdentityProviderByAlias(ALIAS)).thenReturn(model);
+
+        try {
+            refresher.register(session, config());
+            awaitDropped(refresher);
+        } finally {
+            refresher.shutdown();
+        }
+    }
+
+    @Test
+    void registersAgainAfterShutdown() throws Exception {
+        var refresher = new MetadataRefresher();
+        var session = session();
+
+        try {
+            refresher.register(session, config());
+            awaitDropped(refresher);
+            refresher.shutdown();
+            refresher.register(session, config());
+
+            Mockito.verify(sessionFactory, Mockito.timeout(5_000).times(2)).create();
+            awaitDropped(refresher);
+        } finally {
+            refresher.shutdown();
+        }
+    }
+}
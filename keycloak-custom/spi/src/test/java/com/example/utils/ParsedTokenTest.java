@@ -0,0 +1,49 @@
+package com.example.utils;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParsedTokenTest {
+
+    private static String sign(ECKey key) throws Exception {
+        var jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(key.getKeyID()).build(),
+                new JWTClaimsSet.Builder().issuer("https://idp").subject("s=S8979373D").claim("nonce", "n-1").build());
+        jwt.sign(new ECDSASigner(key));
+        return jwt.serialize();
+    }
+
+    @Test
+    void detectsCompactSerialization() {
+        assertTrue(ParsedToken.isJws("a.b.c"));
+        assertTrue(ParsedToken.isJwe("a.b.c.d.e"));
+        assertFalse(ParsedToken.isJws("{\"sub\":\"x\"}"));
+        assertFalse(ParsedToken.isJwe(null));
+    }
+
+    @Test
+    void decodesClaimsOnceAndVerifies() throws Exception {
+        var key = new ECKeyGenerator(Curve.P_256).keyID("k1").generate();
+        var compact = sign(key);
+
+        var token = ParsedToken.parse(compact);
+        assertEquals("k1", token.getHeader().getKeyID());
+        assertEquals(compact, token.getCompact());
+        assertTrue(token.getJwsObject().verify(new ECDSAVerifier(key.toPublicJWK())));
+
+        var claims = token.getClaims();
+        assertSame(claims, token.getClaims());
+        assertEquals("https://idp", claims.getIssuer());
+        assertEquals("n-1", claims.getOtherClaims().get("nonce"));
+        assertEquals(compact, token.toJwsInput().getWireString());
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublishedJwksCacheTest {
+
+    private static KeyWrapper key(String kid, KeyStatus status) {
+        return TestKeys.key(kid, KeyUse.SIG, status, "ES256", null);
+    }
+
+    @Test
+    void rebuildsOnlyWhenKeysChange() {
+        var cache = new PublishedJwksCache();
+        var builds = new AtomicInteger();
+        var rotated = key("sig-1", KeyStatus.ACTIVE);
+
+        var first = cache.get("realm", Stream.of(rotated), () -> ("{\"v\":" + builds.incrementAndGet() + "}").getBytes(StandardCharsets.UTF_8));
+        var second = cache.get("realm", Stream.of(key("sig-1", KeyStatus.ACTIVE)), () -> new byte[0]);
+        rotated.setStatus(KeyStatus.PASSIVE);
+        var third = cache.get("realm", Stream.of(rotated), () -> ("{\"v\":" + builds.incrementAndGet() + "}").getBytes(StandardCharsets.UTF_8));
+
+        assertSame(first, second);
+        assertNotEquals(first.etag(), third.etag());
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void fingerprintCoversCertificateChain() throws Exception {
+        var key = key("sig-1", KeyStatus.ACTIVE);
+        var certificate = Mockito.mock(X509Certificate.class);
+        Mockito.when(certificate.getEncoded()).thenReturn(new byte[]{1, 2, 3});
+        var renewed = Mockito.mock(X509Certificate.class);
+        Mockito.when(renewed.getEncoded()).thenReturn(new byte[]{1, 2, 4});
+
+        key.setCertificate(certificate);
+        var original = PublishedJwksCache.fingerprint(Stream.of(key));
+        assertEquals(original, PublishedJwksCache.fingerprint(Stream.of(key)));
+
+        key.setCertificate(renewed);
+        var afterRenewal = PublishedJwksCache.fingerprint(Stream.of(key));
+        key.setCertificateChain(List.of(renewed, certificate));
+        var withChain = PublishedJwksCache.fingerprint(Stream.of(key));
+
+        assertNotEquals(original, afterRenewal);
+        assertNotEquals(afterRenewal, withChain);
+    }
+
+    @Test
+    void matchesIfNoneMatch() {
+        var document = new PublishedJwksCache().get("realm", "fingerprint", () -> "{}".getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(document.matches(document.etag()));
+        assertTrue(document.matches("\"other\", W/" + document.etag()));
+        assertTrue(document.matches("*"));
+        assertFalse(document.matches("\"other\""));
+        assertFalse(document.matches(null));
+    }
+}
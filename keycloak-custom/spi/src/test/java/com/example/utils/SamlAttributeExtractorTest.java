@@ -0,0 +1,117 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.dom.saml.v2.assertion.AssertionType;
+import org.keycloak.dom.saml.v2.assertion.AttributeStatementType;
+import org.keycloak.dom.saml.v2.assertion.AttributeType;
+import org.keycloak.dom.saml.v2.assertion.AudienceRestrictionType;
+import org.keycloak.dom.saml.v2.assertion.AuthnContextClassRefType;
+import org.keycloak.dom.saml.v2.assertion.AuthnContextType;
+import org.keycloak.dom.saml.v2.assertion.AuthnStatementType;
+import org.keycloak.dom.saml.v2.assertion.ConditionsType;
+import org.keycloak.dom.saml.v2.assertion.NameIDType;
+
+import javax.xml.datatype.DatatypeFactory;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SamlAttributeExtractorTest {
+
+    private static final String PERSISTENT = "urn:oasis:names:tc:SAML:2.0:nameid-format:persistent";
+
+    private static NameIDType nameId(String value) {
+        var nameId = new NameIDType();
+        nameId.setValue(value);
+        nameId.setFormat(URI.create(PERSISTENT));
+        return nameId;
+    }
+
+    private static AssertionType assertion() throws Exception {
+        var datatypes = DatatypeFactory.newInstance();
+        var now = datatypes.newXMLGregorianCalendar("2024-05-01T08:00:00Z");
+        var later = datatypes.newXMLGregorianCalendar("2024-05-01T08:05:00Z");
+
+        var audience = new AudienceRestrictionType();
+        audience.addAudience(URI.create("https://sso.example.gov.sg/realms/agency"));
+        var conditions = new ConditionsType();
+        conditions.setNotBefore(now);
+        conditions.setNotOnOrAfter(later);
+        conditions.addCondition(audience);
+
+        var sequence = new AuthnContextType.AuthnContextTypeSequence();
+        sequence.setClassRef(new AuthnContextClassRefType(
+                URI.create("urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport")));
+        var context = new AuthnContextType();
+        context.setSequence(sequence);
+        var authn = new AuthnStatementType(now);
+        authn.setSessionIndex("_be9967abd904");
+        authn.setAuthnContext(context);
+
+        var attributes = new AttributeStatementType();
+        var userId = new AttributeType("UserId");
+        userId.addAttributeValue("S1234567A");
+        var access = new AttributeType("CPAuthAccess");
+        access.addAttributeValue("EP_ENQUIRY");
+        access.addAttributeValue("EP_SUBMIT");
+        var delegate = new AttributeType("Delegate");
+        delegate.addAttributeValue(nameId("S7654321B"));
+        attributes.addAttribute(new AttributeStatementType.ASTChoiceType(userId));
+        attributes.addAttribute(new AttributeStatementType.ASTChoiceType(access));
+        attributes.addAttribute(new AttributeStatementType.ASTChoiceType(delegate));
+
+        var assertion = new AssertionType("_a75adf55", now);
+        assertion.setConditions(conditions);
+        assertion.addStatement(authn);
+        assertion.addStatement(attributes);
+        return assertion;
+    }
+
+    @Test
+    void extractsAssertionParts() throws Exception {
+        var result = SamlAttributeExtractor.extract(assertion(), nameId("T08LL0001A-S1234567A"), null);
+
+        assertEquals(List.of("T08LL0001A-S1234567A"), result.get(SamlAttributeExtractor.NAME_ID));
+        assertEquals(List.of(PERSISTENT), result.get(SamlAttributeExtractor.NAME_ID_FORMAT));
+        assertEquals(List.of("_be9967abd904"), result.get(SamlAttributeExtractor.SESSION_INDEX));
+        assertEquals(List.of("2024-05-01T08:00:00Z"), result.get(SamlAttributeExtractor.AUTHN_INSTANT));
+        assertEquals(List.of("urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport"),
+                result.get(SamlAttributeExtractor.AUTHN_CONTEXT_CLASS_REF));
+        assertEquals(List.of("2024-05-01T08:00:00Z"), result.get(SamlAttributeExtractor.NOT_BEFORE));
+        assertEquals(List.of("2024-05-01T08:05:00Z"), result.get(SamlAttributeExtractor.NOT_ON_OR_AFTER));
+        assertEquals(List.of("https://sso.example.gov.sg/realms/agency"), result.get(SamlAttributeExtractor.AUDIENCE));
+        assertEquals(List.of("S1234567A"), result.get("UserId"));
+        assertEquals(List.of("EP_ENQUIRY", "EP_SUBMIT"), result.get("CPAuthAccess"));
+        assertEquals(List.of("S7654321B"), result.get("Delegate"));
+    }
+
+    @Test
+    void mappingRenamesAndDropsUnmappedAttributes() throws Exception {
+        var result = SamlAttributeExtractor.extract(assertion(), null, "UserId=uinfin;CPAuthAccess=access");
+
+        assertEquals(List.of("S1234567A"), result.get("uinfin"));
+        assertEquals(List.of("EP_ENQUIRY", "EP_SUBMIT"), result.get("access"));
+        assertFalse(result.containsKey("UserId"));
+        assertFalse(result.containsKey("Delegate"));
+        assertFalse(result.containsKey(SamlAttributeExtractor.NAME_ID));
+        assertEquals(List.of("_be9967abd904"), result.get(SamlAttributeExtractor.SESSION_INDEX));
+    }
+
+    @Test
+    void parsesAttributeMapping() {
+        assertTrue(SamlAttributeExtractor.mapping(" ").isEmpty());
+        assertEquals(Map.of("UserId", "uinfin", "CPEntID", "uen"),
+                SamlAttributeExtractor.mapping("UserId=uinfin; CPEntID = uen;"));
+    }
+
+    @Test
+    void rejectsMalformedMapping() {
+        assertThrows(IllegalArgumentException.class, () -> SamlAttributeExtractor.mapping("UserId"));
+        assertThrows(IllegalArgumentException.class, () -> SamlAttributeExtractor.mapping("UserId=;CPEntID=uen"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.utils;
+
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.encryption.EncryptedKey;
+import org.apache.xml.security.encryption.EncryptionMethod;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.keys.KeyInfo;
+import org.apache.xml.security.keys.content.KeyName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.common.crypto.CryptoIntegration;
+import org.keycloak.common.crypto.CryptoProvider;
+import org.keycloak.crypto.Algorithm;
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+import org.keycloak.models.KeyManager;
+import org.keycloak.models.KeycloakSession;
+import org.keycloak.models.RealmModel;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.security.KeyFactory;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamlDecryptionKeyLocatorTest {
+
+    private final AtomicReference<List<KeyWrapper>> realmKeys = new AtomicReference<>();
+
+    private MockedStatic<CryptoIntegration> cryptoIntegration;
+
+    @BeforeEach
+    void plainJdkCrypto() throws Exception {
+        // DerUtils decodes through the server's crypto provider; stub it for this thread only
+        var provider = Mockito.mock(CryptoProvider.class);
+        Mockito.when(provider.getKeyFactory("RSA")).thenAnswer(invocation -> KeyFactory.getInstance("RSA"));
+        cryptoIntegration = Mockito.mockStatic(CryptoIntegration.class);
+        cryptoIntegration.when(CryptoIntegration::getProvider).thenReturn(provider);
+    }
+
+    @AfterEach
+    void restoreCrypto() {
+        cryptoIntegration.close();
+    }
+
+    private static KeyWrapper key(String kid) throws Exception {
+        return TestKeys.key(kid, KeyUse.ENC, KeyStatus.ACTIVE, Algorithm.RSA_OAEP, TestKeys.keyPair("RSA", 1024));
+    }
+
+    private SamlDecryptionKeyLocator locator(String realmId, String requestedAlgorithm) {
+        var keys = Mockito.mock(KeyManager.class);
+        Mockito.when(keys.getKeysStream(Mockito.any())).thenAnswer(invocation -> realmKeys.get().stream());
+        var session = Mockito.mock(KeycloakSession.class);
+        Mockito.when(session.keys()).thenReturn(keys);
+        var realm = Mockito.mock(RealmModel.class);
+        Mockito.when(realm.getId()).thenReturn(realmId);
+        Mockito.when(realm.getName()).thenReturn(realmId);
+        return new SamlDecryptionKeyLocator(session, realm, requestedAlgorithm);
+    }
+
+    private static EncryptedData encryptedData(String algorithm, String... keyNames) throws Exception {
+        var method = Mockito.mock(EncryptionMethod.class);
+        Mockito.when(method.getAlgorithm()).thenReturn(algorithm);
+        var encryptedKey = Mockito.mock(EncryptedKey.class);
+        Mockito.when(encryptedKey.getEncryptionMethod()).thenReturn(method);
+        var keyInfo = Mockito.mock(KeyInfo.class);
+        Mockito.when(keyInfo.itemEncryptedKey(0)).thenReturn(encryptedKey);
+        Mockito.when(keyInfo.containsKeyName()).thenReturn(keyNames.length > 0);
+        Mockito.when(keyInfo.lengthKeyName()).thenReturn(keyNames.length);
+        for (var i = 0; i < keyNames.length; i++) {
+            var keyName = Mockito.mock(KeyName.class);
+            Mockito.when(keyName.getKeyName()).thenReturn(keyNames[i]);
+            Mockito.when(keyInfo.itemKeyName(i)).thenReturn(keyName);
+        }
+        var encryptedData = Mockito.mock(EncryptedData.class);
+        Mockito.when(encryptedData.getKeyInfo()).thenReturn(keyInfo);
+        return encryptedData;
+    }
+
+    @Test
+    void filtersByKeyName() throws Exception {
+        var first = key("enc-1");
+        var second = key("enc-2");
+        realmKeys.set(List.of(first, second));
+        var locator = locator("realm-key-name", null);
+
+        var named = locator.getKeys(encryptedData(XMLCipher.RSA_OAEP, "enc-2"));
+        var unnamed = locator.getKeys(encryptedData(XMLCipher.RSA_OAEP_11));
+
+        assertEquals(1, named.size());
+        assertArrayEquals(second.getPrivateKey().getEncoded(), named.get(0).getEncoded());
+        assertEquals(2, unnamed.size());
+        assertTrue(locator.getKeys(encryptedData(XMLCipher.RSA_OAEP, "enc-9")).isEmpty());
+    }
+
+    @Test
+    void requestedAlgorithmMismatchFindsNoKeys() throws Exception {
+        realmKeys.set(List.of(key("enc-1")));
+
+        var keys = locator("realm-mismatch", Algorithm.RSA_OAEP).getKeys(encryptedData(XMLCipher.RSA_v1dot5));
+
+        assertTrue(keys.isEmpty());
+    }
+
+    @Test
+    void rebuiltIndexInvalidatesDecodedKeys() throws Exception {
+        var realmId = "realm-rebuilt";
+        realmKeys.set(List.of(key("enc-1")));
+        var decoded = locator(realmId, null).getKeys(encryptedData(XMLCipher.RSA_OAEP));
+        var reused = locator(realmId, null).getKeys(encryptedData(XMLCipher.RSA_OAEP));
+
+        var rotated = key("enc-1");
+        realmKeys.set(List.of(rotated));
+        DecryptionKeyIndex.getInstance().invalidate(realmId);
+        var redecoded = locator(realmId, null).getKeys(encryptedData(XMLCipher.RSA_OAEP));
+
+        assertSame(decoded.get(0), reused.get(0));
+        assertArrayEquals(rotated.getPrivateKey().getEncoded(), redecoded.get(0).getEncoded());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.saml.processing.core.saml.v2.util.SAMLMetadataUtil;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamlMetadataRefresherTest {
+
+    // self-signed EC certificates; CN=sig, enc and both are valid 2024-01-01 for 100 years,
+    // CN=old expired in 2020 and CN=next only becomes valid on 2030-01-01
+    private static final String SIG_CERTIFICATE =
+            "MIIBNDCB3KADAgECAgkAnoicWuineWYwCgYIKoZIzj0EAwIwDjEMMAoGA1UEAxMDc2lnMCAXDTI0" +
+            "MDEwMTAwMDAwMFoYDzIxMjMxMjA4MDAwMDAwWjAOMQwwCgYDVQQDEwNzaWcwWTATBgcqhkjOPQIB" +
+            "BggqhkjOPQMBBwNCAAQceBrKoA1PEqtrpLVBZYG6kH5ZvpTCDDFO+fVJHblvkx/jdigAXzdj5pg/" +
+            "sBuyoea4ak6Jd3Gr1yp9D6QNOgfloyEwHzAdBgNVHQ4EFgQU5Hkb5/jgDdOQhLKLwXbL+/ttQPUw" +
+            "CgYIKoZIzj0EAwIDRwAwRAIgdka3WuP4ASuzmM9Bl8hXWoCZex9FKE6+HIIH701ZUDICIALkp/5f" +
+            "Zry3fkAEx2BQ2EMGG4QwWF1g8EM/6wfBOyYo";
+
+    private static final String ENC_CERTIFICATE =
+            "MIIBNTCB3KADAgECAgkAh20muHhCGkkwCgYIKoZIzj0EAwIwDjEMMAoGA1UEAxMDZW5jMCAXDTI0" +
+            "MDEwMTAwMDAwMFoYDzIxMjMxMjA4MDAwMDAwWjAOMQwwCgYDVQQDEwNlbmMwWTATBgcqhkjOPQIB" +
+            "BggqhkjOPQMBBwNCAATr3Fqngeuedwr22/N7LLTOzU55AgiK+ml8ps6UflXNTNsAjLrR6zTn4cV+" +
+            "RrHHo/Z+jzoeowM/SEKDtF6M/6ahoyEwHzAdBgNVHQ4EFgQUkLyP87ee+MFYo78MdvPgCBJycukw" +
+            "CgYIKoZIzj0EAwIDSAAwRQIgCnI6JFt36lSGzADcZn4ZoerATPYEjngXE+4FH6QFJ64CIQCTn9Ls" +
+            "w8j7aMQPaKQr0Ya7SiGhPjLeHIXP8RuTFWJO3g==";
+
+    private static final String BOTH_CERTIFICATE =
+            "MIIBNjCB3qADAgECAgkAhodz+M0Zmw0wCgYIKoZIzj0EAwIwDzENMAsGA1UEAxMEYm90aDAgFw0y" +
+            "NDAxMDEwMDAwMDBaGA8yMTIzMTIwODAwMDAwMFowDzENMAsGA1UEAxMEYm90aDBZMBMGByqGSM49" +
+            "AgEGCCqGSM49AwEHA0IABE+rI7Oq9+/gYtoWMCyqXKi6/pbcwJKA5ritLLGSi7lL+8k4LgR/pokk" +
+            "sl+9XBuZf1oElJZm2XIpa7SN6jPI+rujITAfMB0GA1UdDgQWBBQu/l1WN2s3mVclhdlA/he60oc6" +
+            "MTAKBggqhkjOPQQDAgNHADBEAiAPOzKajsAlukJKZsy4cLqgtjZJ+n5jIQJ7TxMFNKZA0QIgYtjr" +
+            "Kqv5H8EBRYt6x7hbuDp0DjtF7BS2bf3TQ1wGy9k=";
+
+    private static final String OLD_CERTIFICATE =
+            "MIIBMzCB2qADAgECAgkAwllhvWzNSrkwCgYIKoZIzj0EAwIwDjEMMAoGA1UEAxMDb2xkMB4XDTIw" +
+            "MDEwMTAwMDAwMFoXDTIwMDEzMTAwMDAwMFowDjEMMAoGA1UEAxMDb2xkMFkwEwYHKoZIzj0CAQYI" +
+            "KoZIzj0DAQcDQgAEje7eXdmfQOhyEYt/G8ga7YGZGAEdGI2yn7qyNDHOzO9iePSDlNx7OFLbP9jV" +
+            "PhrKHLXzAHJA6I04ttFPri/cS6MhMB8wHQYDVR0OBBYEFBitgwh7jxqYITzaJEWocomUvOI/MAoG" +
+            "CCqGSM49BAMCA0gAMEUCICZOfBkFzoGjQvxv/MfUJgsybeJ2sCdk+O1HDU4LtvJaAiEAsuyHZt1O" +
+            "tfDJ7OZqOdLtTdmrEjNYmTv8mGJTfDHNsds=";
+
+    private static final String NEXT_CERTIFICATE =
+            "MIIBNDCB26ADAgECAggp0sR0fPgHMDAKBggqhkjOPQQDAjAPMQ0wCwYDVQQDEwRuZXh0MB4XDTMw" +
+            "MDEwMTAwMDAwMFoXDTM5MTIzMDAwMDAwMFowDzENMAsGA1UEAxMEbmV4dDBZMBMGByqGSM49AgEG" +
+            "CCqGSM49AwEHA0IABGRyLLQoZFJ8U2KV/kBkN6kROS2N7koxnwkFJ0fxyd4XDEroLPnstOUotStP" +
+            "Ov2KYwFXeMpb/SRIYm3uNZiMkFmjITAfMB0GA1UdDgQWBBQBM7xhQVpRmLNg9bepAFCEWJ4ELzAK" +
+            "BggqhkjOPQQDAgNIADBFAiAEuuyZxIXb+MT8GL1OsN5561hJU3fZjtnpvIi0JkYJxQIhAOIWWUbF" +
+            "p1AgA523tMOwW+WZ5Je6Y8X2fx8f7UApSrAY";
+
+    private static final long MAX_DELAY = SamlMetadataRefresher.DEFAULT_REFRESH_SECONDS;
+
+    private static final long NOW = Instant.parse("2025-06-01T00:00:00Z").toEpochMilli();
+
+    private static String keyDescriptor(String use, String keyName, String certificate) {
+        return "<md:KeyDescriptor" + (use != null ? " use=\"" + use + "\"" : "") + ">"
+                + "<ds:KeyInfo>" + (keyName != null ? "<ds:KeyName>" + keyName + "</ds:KeyName>" : "")
+                + "<ds:X509Data><ds:X509Certificate>" + certificate + "</ds:X509Certificate></ds:X509Data>"
+                + "</ds:KeyInfo></md:KeyDescriptor>";
+    }
+
+    private static List<Key> keys(Iterable<Key> locator) {
+        var keys = new ArrayList<Key>();
+        locator.forEach(keys::add);
+        return keys;
+    }
+
+    @Test
+    void nextDelayDefaultsWithoutValidUntilOrCacheDuration() {
+        assertEquals(SamlMetadataRefresher.DEFAULT_REFRESH_SECONDS,
+                SamlMetadataRefresher.nextDelay(NOW, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, MAX_DELAY));
+    }
+
+    @Test
+    void nextDelayRefreshesAheadOfTheShorterLifetime() {
+        var hour = TimeUnit.HOURS.toMillis(1);
+
+        assertEquals(2880, SamlMetadataRefresher.nextDelay(NOW, NOW + hour, Long.MAX_VALUE, Long.MAX_VALUE, MAX_DELAY));
+        assertEquals(1440, SamlMetadataRefresher.nextDelay(NOW, NOW + hour, hour / 2, Long.MAX_VALUE, MAX_DELAY));
+        assertEquals(2880, SamlMetadataRefresher.nextDelay(NOW, Long.MAX_VALUE, hour, Long.MAX_VALUE, MAX_DELAY));
+    }
+
+    @Test
+    void nextDelayIsCappedAtTheMaximum() {
+        var year = TimeUnit.DAYS.toMillis(365);
+
+        assertEquals(MAX_DELAY, SamlMetadataRefresher.nextDelay(NOW, NOW + year, year, Long.MAX_VALUE, MAX_DELAY));
+        assertEquals(7200, SamlMetadataRefresher.nextDelay(NOW, NOW + year, Long.MAX_VALUE, Long.MAX_VALUE, 7200));
+        assertEquals(7200, SamlMetadataRefresher.nextDelay(NOW, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, 7200));
+    }
+
+    @Test
+    void nextDelayIsCappedAtTheNextCertificateBoundary() {
+        var day = TimeUnit.DAYS.toMillis(1);
+
+        assertEquals(601, SamlMetadataRefresher.nextDelay(NOW, NOW + day, Long.MAX_VALUE, NOW + 600_000, MAX_DELAY));
+        assertEquals(601, SamlMetadataRefresher.nextDelay(NOW, Long.MAX_VALUE, Long.MAX_VALUE, NOW + 600_000, MAX_DELAY));
+    }
+
+    @Test
+    void nextDelayNeverDropsBelowTheMinimum() {
+        assertEquals(SamlMetadataRefresher.MIN_DELAY_SECONDS,
+                SamlMetadataRefresher.nextDelay(NOW, NOW - 60_000, Long.MAX_VALUE, Long.MAX_VALUE, MAX_DELAY));
+        assertEquals(SamlMetadataRefresher.MIN_DELAY_SECONDS,
+                SamlMetadataRefresher.nextDelay(NOW, NOW + 10_000, Long.MAX_VALUE, Long.MAX_VALUE, MAX_DELAY));
+        assertEquals(SamlMetadataRefresher.MIN_DELAY_SECONDS,
+                SamlMetadataRefresher.nextDelay(NOW, Long.MAX_VALUE, Long.MAX_VALUE, NOW + 1_000, MAX_DELAY));
+    }
+
+    @Test
+    void buildSplitsKeysByUse() throws Exception {
+        var descriptor = SAMLMetadataUtil.parseEntityDescriptorType(
+                "<md:EntityDescriptor xmlns:md=\"urn:oasis:names:tc:SAML:2.0:metadata\""
+                        + " xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" entityID=\"https://saml.corppass.gov.sg\">"
+                        + "<md:IDPSSODescriptor protocolSupportEnumeration=\"urn:oasis:names:tc:SAML:2.0:protocol\">"
+                        + keyDescriptor("signing", "sig-1", SIG_CERTIFICATE)
+                        + keyDescriptor("encryption", null, ENC_CERTIFICATE)
+                        + keyDescriptor(null, "both-1", BOTH_CERTIFICATE)
+                        + keyDescriptor("signing", "old-1", OLD_CERTIFICATE)
+                        + keyDescriptor("signing", "next-1", NEXT_CERTIFICATE)
+                        + "<md:SingleSignOnService Binding=\"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect\""
+                        + " Location=\"https://saml.corppass.gov.sg/sso\"/>"
+                        + "</md:IDPSSODescriptor></md:EntityDescriptor>");
+
+        var keys = SamlMetadataRefresher.build("https://saml.corppass.gov.sg/metadata", descriptor, NOW);
+
+        assertEquals("https://saml.corppass.gov.sg/metadata", keys.url());
+
+        assertNotNull(keys.signing().getKey("sig-1"));
+        assertNotNull(keys.signing().getKey("both-1"));
+        assertNull(keys.signing().getKey("CN=enc"));
+        assertNull(keys.signing().getKey("old-1"));
+        assertNull(keys.signing().getKey("next-1"));
+        assertEquals(2, keys(keys.signing()).size());
+        assertNotNull(keys.encryption().getKey("CN=enc"));
+        assertSame(keys.signing().getKey("both-1"), keys.encryption().getKey("both-1"));
+        assertNull(keys.encryption().getKey("sig-1"));
+        assertEquals(2, keys(keys.encryption()).size());
+        assertEquals(Instant.parse("2030-01-01T00:00:00Z").toEpochMilli(), keys.rebuildAt());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.rotation.KeyLocator;
+import org.mockito.Mockito;
+
+import java.security.Key;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SamlSigningKeyCacheTest {
+
+    private final Map<String, X509Certificate> certificates = new HashMap<>();
+    private final AtomicInteger parsed = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SamlSigningKeyCache cache = new SamlSigningKeyCache(now::get, pem -> {
+        parsed.incrementAndGet();
+        return certificates.get(pem);
+    });
+
+    private static PublicKey publicKey() throws Exception {
+        var generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        return generator.generateKeyPair().getPublic();
+    }
+
+    private PublicKey certificate(String pem, long notBefore, long notAfter) throws Exception {
+        var publicKey = publicKey();
+        var certificate = Mockito.mock(X509Certificate.class);
+        Mockito.when(certificate.getNotBefore()).thenReturn(new Date(notBefore));
+        Mockito.when(certificate.getNotAfter()).thenReturn(new Date(notAfter));
+        Mockito.when(certificate.getPublicKey()).thenReturn(publicKey);
+        certificates.put(pem, certificate);
+        return publicKey;
+    }
+
+    private static List<Key> keys(KeyLocator locator) {
+        var keys = new ArrayList<Key>();
+        locator.forEach(keys::add);
+        return keys;
+    }
+
+    @Test
+    void reparsesOnlyWhenConfigurationChanges() throws Exception {
+        var current = certificate("current", 0, 5_000_000);
+        var next = certificate("next", 0, 5_000_000);
+
+        var first = cache.get("idp-1", new String[]{"current"});
+        var second = cache.get("idp-1", new String[]{"current"});
+        var changed = cache.get("idp-1", new String[]{"current", "next"});
+
+        assertSame(first, second);
+        assertEquals(List.of(current), keys(first));
+        assertEquals(3, parsed.get(), "the unchanged configuration is not parsed again");
+        assertTrue(keys(changed).containsAll(List.of(current, next)));
+    }
+
+    @Test
+    void rebuildsAtValidityBoundaries() throws Exception {
+        var expiring = certificate("expiring", 0, 2_000_000);
+        var upcoming = certificate("upcoming", 1_500_000, 9_000_000);
+        var configured = new String[]{"expiring", "upcoming"};
+
+        var initial = cache.get("idp-1", configured);
+        now.set(1_499_999);
+        assertSame(initial, cache.get("idp-1", configured));
+        now.set(1_500_000);
+        var rotated = cache.get("idp-1", configured);
+        now.set(2_000_000);
+        assertSame(rotated, cache.get("idp-1", configured));
+        now.set(2_000_001);
+        var expired = cache.get("idp-1", configured);
+
+        assertEquals(List.of(expiring), keys(initial));
+        assertEquals(2, keys(rotated).size());
+        assertEquals(List.of(upcoming), keys(expired));
+        assertEquals(2, parsed.get());
+    }
+
+    @Test
+    void leavesOutExpiredCertificates() throws Exception {
+        certificate("expired", 0, 999_999);
+        var valid = certificate("valid", 0, 5_000_000);
+
+        var locator = cache.get("idp-1", new String[]{"expired", "valid"});
+
+        assertEquals(List.of(valid), keys(locator));
+    }
+}
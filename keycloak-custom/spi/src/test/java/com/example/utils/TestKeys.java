@@ -0,0 +1,42 @@
+package com.example.utils;
+
+import org.keycloak.crypto.KeyStatus;
+import org.keycloak.crypto.KeyUse;
+import org.keycloak.crypto.KeyWrapper;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Realm keys as a key provider would return them, for tests of the key caches and selectors.
+ */
+final class TestKeys {
+
+    private TestKeys() {
+    }
+
+    /**
+     * Key from the provider {@code provider-<kid>}. The key pair may be {@code null} when only
+     * the metadata matters.
+     */
+    static KeyWrapper key(String kid, KeyUse use, KeyStatus status, String algorithm, KeyPair pair) {
+        var key = new KeyWrapper();
+        key.setProviderId("provider-" + kid);
+        key.setKid(kid);
+        key.setUse(use);
+        key.setStatus(status);
+        key.setAlgorithm(algorithm);
+        if (pair != null) {
+            key.setPrivateKey(pair.getPrivate());
+            key.setPublicKey(pair.getPublic());
+        }
+        return key;
+    }
+
+    static KeyPair keyPair(String algorithm, int size) throws NoSuchAlgorithmException {
+        var generator = KeyPairGenerator.getInstance(algorithm);
+        generator.initialize(size);
+        return generator.generateKeyPair();
+    }
+}
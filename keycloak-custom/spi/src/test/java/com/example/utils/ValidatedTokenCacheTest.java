@@ -0,0 +1,45 @@
+package com.example.utils;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.JsonWebToken;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValidatedTokenCacheTest {
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final ValidatedTokenCache cache = new ValidatedTokenCache(4, now::get);
+
+    @Test
+    void expiresAtExpMinusClockSkew() {
+        var key = ValidatedTokenCache.cacheKey("realm", "singpass", "token", "a.b.c");
+        var token = new JsonWebToken().exp(now.get() / 1000 + 60);
+
+        cache.put(key, token, token.getExp(), 10);
+        now.addAndGet(49_000);
+        assertSame(token, cache.get(key, JsonWebToken.class));
+
+        now.addAndGet(1_000);
+        assertNull(cache.get(key, JsonWebToken.class));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void skipsTokensWithoutUsableExp() {
+        cache.put("no-exp", new JsonWebToken(), null, 0);
+        cache.put("expiring", new JsonWebToken(), now.get() / 1000 + 5, 5);
+
+        assertEquals(0, cache.size());
+        assertNull(ValidatedTokenCache.unverifiedExp("opaque-access-token"));
+    }
+
+    @Test
+    void keysDifferPerTokenAndPurpose() {
+        var token = ValidatedTokenCache.cacheKey("realm", "singpass", "token", "a.b.c");
+
+        assertNotEquals(token, ValidatedTokenCache.cacheKey("realm", "singpass", "userinfo", "a.b.c"));
+        assertNotEquals(token, ValidatedTokenCache.cacheKey("realm", "singpass", "token", "a.b.d"));
+        assertFalse(token.contains("a.b.c"));
+    }
+}